@@ -20,6 +20,8 @@ import org.apache.commons.benchmark.proxy.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
 
 /**
  * <p>
@@ -98,9 +100,40 @@ public class Benchmark {
      */
     public static int INTERVAL_15 = 15 * 60 * 1000;
 
+    /**
+     * The widest interval which can be read with getTracker( interval ).  Each
+     * benchmark keeps two of these worth of INTERVAL_1 buckets so wider
+     * intervals cost a bit of memory but nothing when recording.  Zero means
+     * INTERVAL_15.
+     */
+    public static int MAX_INTERVAL = 0;
+
+    /**
+     * Width (in millis) of the buckets used by sliding trackers.  This is how
+     * far a sliding interval moves forward at a time.
+     */
+    public static int SLIDING_RESOLUTION = 1000;
+
+    /**
+     * The widest interval which can be read with getSlidingTracker( interval ).
+     * Every sliding benchmark keeps two of these worth of SLIDING_RESOLUTION
+     * buckets.
+     */
+    public static int SLIDING_INTERVAL = 60 * 1000;
+
     /**
      * Disable all logging of benchmarks.  This essentially makes the
      * performance overhead zero.
+     *
+     * <p> This is deliberately a plain (non-volatile) static.  It's read
+     * exactly once as the very first thing in each recording method and
+     * everything else lives behind it so the disabled path is a load and a
+     * branch which the JIT always inlines and can hoist out of hot loops.  It
+     * can be flipped back on at any time without a restart but there's no
+     * guarantee about when other threads see the change.  They see it
+     * eventually, and a loop the JIT compiled with the check hoisted out may
+     * not see it until the thread leaves and enters it again.  Don't depend
+     * on it taking effect immediately.
      */
     public static boolean DISABLED = false;
 
@@ -111,21 +144,105 @@ public class Benchmark {
      * thread.
      */
     public static boolean DISABLE_LOCAL = false;
+
+    /**
+     * The most exception classes we'll count failures for per benchmark.
+     * Anything past this is counted under OTHER_ERRORS so code which throws
+     * an endless variety of exceptions can't grow the map forever.
+     */
+    public static int MAX_ERROR_CLASSES = 32;
+
+    public static final String OTHER_ERRORS = "other";
+
+    /**
+     * Where all benchmarks get their time.  Durations use the high resolution
+     * nano clock and bucket selection uses a cached coarse wall clock.  Tests
+     * can replace this with a ManualClock.
+     */
+    public static BenchmarkClock CLOCK = new CachedClock();
     
     /**
      * Maintain a metadata map between the name and BMeta classes.
      */
     static Map<String,Benchmark> benchmarks = new ConcurrentHashMap();
 
+    /**
+     * Every registered benchmark indexed by the segments of its name so we can
+     * answer prefix queries without a full scan.  See BenchmarkIndex.
+     */
+    static BenchmarkIndex index = new BenchmarkIndex();
+
+    /**
+     * The most benchmarks we'll register.  Once the registry is full new
+     * names are counted as overflowed and getBenchmark() hands back the
+     * shared overflow benchmark instead.  This keeps a call site which puts
+     * an ID in the name from filling the heap.  Zero for no limit.
+     */
+    public static int MAX_BENCHMARKS = 100000;
+
+    /**
+     * Name of the benchmark which collects everything recorded against names
+     * which didn't fit in the registry.
+     */
+    public static final String OVERFLOW_NAME = "org.apache.commons.benchmark.overflow";
+
+    /**
+     * Benchmarks with no activity for this many INTERVAL_1 intervals are
+     * evicted from the registry by the rollover thread.  Their lifetime totals
+     * are folded into the nearest registered parent (by name) when
+     * FOLD_EVICTED is set.  Zero (the default) never evicts.
+     */
+    public static int IDLE_INTERVALS = 0;
+
+    public static boolean FOLD_EVICTED = true;
+
+    private static volatile Benchmark overflow = null;
+
+    static AtomicLong overflowed = new AtomicLong();
+
+    private static AtomicLong evicted = new AtomicLong();
+
+    /**
+     * Callers resolved by initCaller() keyed by call site.
+     */
+    static ConcurrentHashMap<StackTraceElement,CallerInfo> callSites = new ConcurrentHashMap();
+
+    /**
+     * The maximum number of call sites we keep in callSites.
+     */
+    public static int MAX_CALL_SITES = 10000;
+
     /**
      * The current name of this benchmark.
      */
     String name = null;
 
-    //TODO: we need a tracker for the ENTIRE lifecycle of a VM.  this shouldn't
-    //take up much more memory and won't ever be rolled over.  This will come in
-    //handy for stats like the number of times a queue is reloaded
-    
+    /**
+     * Every event is recorded once into this window.  The trackers below are
+     * just views on the window.
+     */
+    volatile BenchmarkWindow window = null;
+
+    /**
+     * Smoothed completion rates.  Null until somebody asks for them with
+     * getMeter() or the benchmark is registered in a metered category (see
+     * BenchmarkCategory.isMetered) so benchmarks nobody reads rates from don't
+     * pay for a meter.  Marking it is one lock-free add.
+     */
+    volatile Meter meter = null;
+
+    /**
+     * Fine grained window for sliding trackers.  Created the first time
+     * somebody asks for a sliding tracker.
+     */
+    volatile BenchmarkWindow sliding = null;
+
+    /**
+     * The number of failures by exception class name.  Created on the first
+     * failure with an exception.
+     */
+    volatile ConcurrentHashMap<String,AtomicLong> errors = null;
+
     /**
      * The current benchmark.
      */
@@ -136,13 +253,51 @@ public class Benchmark {
     /**
      * When benchmarks are created with a constructor we only store them as a
      * valid benchmark when start/complete is called without a given operation.
+     * Volatile since the rollover thread clears it when we're evicted.
      */
-    boolean registered = false;
+    volatile boolean registered = false;
     
     /**
      *  True if we need the start() method to introspect on the first call.
+     *  This is volatile so that it can be checked without acquiring
+     *  FULL_INIT_MUTEX.
+     */
+    volatile boolean requiresFullInit = false;
+
+    /**
+     * The category this benchmark belongs to.  Found when the benchmark is
+     * registered and whenever categories change.
+     */
+    BenchmarkCategory category = null;
+
+    /**
+     * Cached from the category so that a disabled benchmark costs a single
+     * field check.
+     */
+    volatile boolean disabled = false;
+
+    /**
+     * Cached from the category so that a rollover doesn't walk the category
+     * tree or look up a Logger.  Null unless logOnRollover is on.
+     */
+    volatile Logger rolloverLogger = null;
+
+    /**
+     * Cached from the category.  See BenchmarkCategory.isBroadcastOnRollover.
+     */
+    volatile boolean broadcastOnRollover = true;
+
+    /**
+     * The category's sample rate as a mask.  Read by our window at every
+     * rollover.  See BenchmarkCategory.getSampleMask.
+     */
+    volatile int categorySampleMask = 0;
+
+    /**
+     * The number of durations per INTERVAL_1 to sample.  Zero times every
+     * call.  See setSampleTarget().
      */
-    boolean requiresFullInit = false;
+    volatile int sampleTarget = 0;
 
     protected int lineNumber = -1;
     protected String method = null;
@@ -190,9 +345,46 @@ public class Benchmark {
      */
     void clear() {
 
-        tracker1  = new BenchmarkTracker( INTERVAL_1,  this );
-        tracker5  = new BenchmarkTracker( INTERVAL_5,  this );
-        tracker15 = new BenchmarkTracker( INTERVAL_15, this );
+        if ( window != null )
+            window.close();
+
+        if ( meter != null ) {
+            meter.close();
+            meter = null;
+        }
+
+        if ( sliding != null ) {
+            sliding.close();
+            sliding = null;
+        }
+
+        errors = null;
+
+        openWindow( null );
+
+        if ( category != null && category.isMetered() )
+            openMeter();
+
+    }
+
+    /**
+     * Swap in a new window (and its trackers).  Operations begun on the
+     * retired window (if any) are still in flight on the new one.
+     */
+    private void openWindow( BenchmarkWindow retired ) {
+
+        BenchmarkWindow window = new BenchmarkWindow( INTERVAL_1,
+                                                      Math.max( INTERVAL_15, MAX_INTERVAL ),
+                                                      this );
+
+        if ( retired != null )
+            window.inherit( retired );
+
+        tracker1  = window.getTracker( INTERVAL_1 );
+        tracker5  = window.getTracker( INTERVAL_5 );
+        tracker15 = window.getTracker( INTERVAL_15 );
+
+        this.window = window;
 
     }
     
@@ -231,6 +423,123 @@ public class Benchmark {
         return tracker15.rolloverWhenNecessary();
     }
 
+    /**
+     * Get a tracker with the given interval (in millis).  Any interval up to
+     * MAX_INTERVAL can be used.  It's rounded to a multiple of INTERVAL_1.
+     *
+     */
+    public BenchmarkTracker getTracker( int interval ) {
+        return window.getTracker( interval ).rolloverWhenNecessary();
+    }
+
+    /**
+     * Get the totals for the entire life of this benchmark.  These never roll
+     * over which comes in handy for stats like the number of times a queue is
+     * reloaded.  Closed buckets are folded into the totals at rollover so this
+     * costs nothing extra when recording.  If a LifetimeCheckpoint was loaded
+     * the totals from before the restart are included.
+     *
+     */
+    public BenchmarkMeta getLifetime() {
+
+        BenchmarkMeta meta = window.lifetime();
+
+        LifetimeCheckpoint.restore( name, meta );
+
+        return meta;
+
+    }
+
+    /**
+     * Take an immutable snapshot of this benchmark's intervals and lifetime
+     * totals without rolling anything over.  See BenchmarkSnapshot.
+     *
+     */
+    public BenchmarkSnapshot snapshot() {
+        return BenchmarkSnapshot.capture( Collections.singleton( this ) );
+    }
+
+    /**
+     * Get a sliding tracker over the last SLIDING_INTERVAL millis.
+     *
+     */
+    public BenchmarkTracker getSlidingTracker() {
+        return getSlidingTracker( SLIDING_INTERVAL );
+    }
+
+    /**
+     * Get a tracker whose interval (in millis) slides forward every
+     * SLIDING_RESOLUTION millis instead of rolling over once per interval.
+     * Any interval up to SLIDING_INTERVAL can be used.  Events are only
+     * recorded into the sliding window from the first time this is called.
+     *
+     * @see SlidingBenchmarkTracker
+     */
+    public BenchmarkTracker getSlidingTracker( int interval ) {
+
+        if ( sliding == null ) {
+
+            synchronized( FULL_INIT_MUTEX ) {
+
+                if ( sliding == null ) {
+                    sliding = new BenchmarkWindow( SLIDING_RESOLUTION,
+                                                   SLIDING_INTERVAL,
+                                                   this,
+                                                   true );
+                }
+
+            }
+
+        }
+
+        return sliding.getTracker( interval ).rolloverWhenNecessary();
+
+    }
+
+    /**
+     * Get a meter with the 1, 5, and 15 minute exponentially weighted rate of
+     * completions.  Unlike the trackers this doesn't jump around at rollover.
+     * Unless the benchmark's category is metered the meter is created here and
+     * only counts completions from now on.
+     */
+    public Meter getMeter() {
+        return openMeter();
+    }
+
+    private Meter openMeter() {
+
+        Meter meter = this.meter;
+
+        if ( meter != null )
+            return meter;
+
+        synchronized( this ) {
+
+            if ( this.meter == null )
+                this.meter = new Meter();
+
+            return this.meter;
+
+        }
+
+    }
+
+    /**
+     * The number of counters each bucket needs.  Typed benchmarks which only
+     * record some of the values override this so their buckets are smaller.
+     */
+    int getWidth() {
+        return BenchmarkInterval.WIDTH;
+    }
+
+    /**
+     * The first counter each bucket needs.  Buckets hold getWidth() counters
+     * starting here.
+     */
+    int getFirstCounter() {
+        return BenchmarkInterval.STARTED;
+    }
+
     /**
      * Get the name of this benchmark.  Usually the classname or method name of
      * the caller.
@@ -245,12 +554,12 @@ public class Benchmark {
      * Needs to be called BEFORE we run any metrics are executed (like start,
      * complete, hit, miss, etc).  Return true if we should continue.  This is
      * the key entry point for any metric interface.
+     *
+     * NOTE: callers check DISABLED before calling this.  We don't check it
+     * again here.
      */
     boolean beforeMetric() {
 
-        if ( DISABLED )
-            return false;
-
         // NOTE: this duplicate if ( requiresFullInit ) statement is a bit
         // unusual.  We have one outside the synchronized block and one inside
         // the block.  Why are we doing this?
@@ -261,30 +570,30 @@ public class Benchmark {
         //
         // During startup multiple threads will bypass this first if statement
         // and attempt to acquire the lock.  ONE will succeed, init the object,
-        // and then set requiresFullInit = true.  The other threads will then
+        // and then set requiresFullInit = false.  The other threads will then
         // acquire the lock one by one.  We then want to skip re-initialization
         // because it's no longer required which is why we have the second if
         // statement.
         //
-        // I wonder if there's a more elegant way to do this such as a
-        // synchronizedIf statement.
+        // requiresFullInit is volatile and is the LAST thing written during
+        // init.  A thread which reads false here is therefore guaranteed to
+        // see the name, method, etc. that were resolved by the thread which
+        // did the init.
         //
         // Avoid synchronization here is critical because we want to prevent
         // peformance issues on multicore boxes.
 
         if ( requiresFullInit ) {
-            synchronized( FULL_INIT_MUTEX ) {
-                if ( requiresFullInit ) {
-                    initCaller( true );
-                    clear();
-                }
-            }
+            fullInit();
         }
 
         doRegisterWhenNecessary();
 
+        if ( disabled )
+            return false;
+
         //this could happen if start() isn't called first.
-        if ( tracker1 == null )
+        if ( window == null )
             return false;
 
         return true;
@@ -292,28 +601,38 @@ public class Benchmark {
     }
 
     /**
-     * Tell the benchmark that its has been started for this interval.
-     *
+     * Resolve the caller exactly once.  This is the slow path of beforeMetric()
+     * and is only taken by the first few calls.
      */
-    public void start() {
-
-        if ( DISABLED  )
-            return;
+    private void fullInit() {
 
-        //only allow one concurrent init so that 
         synchronized( FULL_INIT_MUTEX ) {
 
             if ( requiresFullInit ) {
+                //initCaller() clears requiresFullInit as its last step which
+                //publishes the caller info to other threads.
                 initCaller( true );
-                clear();
             }
+
         }
 
-        doRegisterWhenNecessary();
+    }
 
-        tracker1.start();
-        tracker5.start();
-        tracker15.start();
+    /**
+     * Tell the benchmark that its has been started for this interval.
+     *
+     */
+    public void start() {
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        window.start();
+
+        slide( BenchmarkInterval.STARTED );
 
     }
 
@@ -327,27 +646,398 @@ public class Benchmark {
         if ( DISABLED )
             return;
 
-        doRegisterWhenNecessary();
+        if ( beforeMetric() == false )
+            return;
+
+        long duration = window.complete();
+
+        slideCompleted( duration, false );
+        
+        mark();
+        
+    }
+
+    /**
+     * Complete the operation with the outcome given.  When the throwable is
+     * null this is complete() and otherwise it's fail( t ).  Handy in a
+     * finally block:
+     *
+     * <code>
+     *
+     * Throwable failure = null;
+     *
+     * benchmark.start();
+     *
+     * try {
+     *
+     *     //do something that might throw
+     *
+     * } catch ( RuntimeException e ) {
+     *     failure = e;
+     *     throw e;
+     * } finally {
+     *     benchmark.complete( failure );
+     * }
+     *
+     * </code>
+     */
+    public void complete( Throwable t ) {
+
+        if ( t == null ) {
+            complete();
+        } else {
+            fail( t );
+        }
+
+    }
+
+    /**
+     * Tell the benchmark that the operation started with start() has failed.
+     */
+    public void fail() {
+        fail( null );
+    }
+
+    /**
+     * Tell the benchmark that the operation started with start() has failed
+     * with the given exception (which may be null).  Failures are counted
+     * apart from completions and their durations are kept apart as well so
+     * errors which fail fast don't make the mean duration look better than it
+     * is.
+     */
+    public void fail( Throwable t ) {
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        long duration = window.complete( true );
+
+        slideCompleted( duration, true );
+
+        error( t );
+        
+    }
+
+    /**
+     * Start timing an operation and return a token which must be handed back
+     * to end().  Unlike start()/complete() this keeps no per thread state and
+     * allocates nothing so nested and re-entrant timings on the same thread
+     * can't clobber each other.  Durations are measured with the nano clock
+     * so this is accurate for operations that take less than a millisecond.
+     *
+     * <code>
+     *
+     * long t = benchmark.begin();
+     *
+     * try {
+     *
+     *     //do something expensive
+     *
+     * } finally {
+     *     benchmark.end( t );
+     * }
+     *
+     * </code>
+     *
+     * @return the token for end().  Zero if this benchmark is disabled.
+     */
+    public long begin() {
+
+        if ( DISABLED )
+            return 0;
+
+        if ( beforeMetric() == false )
+            return 0;
+
+        slide( BenchmarkInterval.STARTED );
+
+        return window.begin();
+
+    }
+
+    /**
+     * Tell the benchmark that the operation started with the given token (from
+     * begin()) has been completed for this interval.
+     *
+     */
+    public void end( long token ) {
+
+        //the benchmark was disabled when begin() was called.
+        if ( token == 0 )
+            return;
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        long duration = window.end( token );
+
+        slideCompleted( duration, false );
+
+        mark();
+
+    }
+
+    /**
+     * Like complete( Throwable ) but for a token returned from begin().
+     */
+    public void end( long token, Throwable t ) {
+
+        if ( t == null ) {
+            end( token );
+        } else {
+            fail( token, t );
+        }
+
+    }
+
+    /**
+     * Used by BenchmarkScope.close() so that it stays small enough to inline.
+     */
+    void end( long token, boolean failed, Throwable t ) {
+
+        if ( failed ) {
+            fail( token, t );
+        } else {
+            end( token );
+        }
+
+    }
+
+    /**
+     * Tell the benchmark that the operation started with the given token (from
+     * begin()) has failed with the given exception (which may be null).
+     */
+    public void fail( long token, Throwable t ) {
+
+        if ( token == 0 )
+            return;
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        long duration = window.end( token, true );
+
+        slideCompleted( duration, true );
+
+        error( t );
+
+    }
+
+    /**
+     * Start timing an operation and return a scope which ends it when it's
+     * closed.  See BenchmarkScope.
+     */
+    public BenchmarkScope time() {
+
+        //NOTE: don't return a shared instance when disabled.  Merging it
+        //with the new scope stops escape analysis from removing the
+        //allocation.  A zero token already makes close() a no-op.
+        return new BenchmarkScope( this, begin() );
+
+    }
+
+    /**
+     * Run the given task and time it.  If it throws the operation is counted
+     * as a failure and the exception is passed through.  Nothing is allocated
+     * so this is safe to use in hot loops as long as the task itself is
+     * created once and reused.
+     */
+    public void time( Runnable task ) {
+
+        long token = begin();
+
+        Throwable failure = null;
+
+        try {
+            task.run();
+        } catch ( RuntimeException e ) {
+            failure = e;
+            throw e;
+        } catch ( Error e ) {
+            failure = e;
+            throw e;
+        } finally {
+            end( token, failure );
+        }
+
+    }
+
+    /**
+     * Like time( Runnable ) but for a task which returns a value and may
+     * throw a checked exception.
+     */
+    public <V> V timeChecked( Callable<V> task ) throws Exception {
+
+        long token = begin();
+
+        Throwable failure = null;
+
+        try {
+            return task.call();
+        } catch ( Exception e ) {
+            failure = e;
+            throw e;
+        } catch ( Error e ) {
+            failure = e;
+            throw e;
+        } finally {
+            end( token, failure );
+        }
+
+    }
+
+    /**
+     * Count a failure against the class of the given exception.
+     */
+    void error( Throwable t ) {
+
+        if ( t == null )
+            return;
+
+        ConcurrentHashMap<String,AtomicLong> errors = this.errors;
+
+        if ( errors == null ) {
+
+            synchronized( FULL_INIT_MUTEX ) {
+
+                if ( this.errors == null )
+                    this.errors = new ConcurrentHashMap();
+
+                errors = this.errors;
+
+            }
+
+        }
+
+        String key = t.getClass().getName();
+
+        AtomicLong count = errors.get( key );
+
+        if ( count == null ) {
+
+            if ( errors.size() >= MAX_ERROR_CLASSES )
+                key = OTHER_ERRORS;
+
+            AtomicLong created = new AtomicLong();
+
+            count = errors.putIfAbsent( key, created );
+
+            if ( count == null )
+                count = created;
+
+        }
+
+        count.incrementAndGet();
+
+    }
+
+    /**
+     * Get the number of failures by exception class name over the life of
+     * this benchmark.  Only failures recorded with an exception are counted.
+     */
+    public Map<String,Long> getErrors() {
+
+        Map<String,Long> result = new TreeMap();
+
+        ConcurrentHashMap<String,AtomicLong> errors = this.errors;
+
+        if ( errors == null )
+            return result;
+
+        for ( Map.Entry<String,AtomicLong> entry : errors.entrySet() ) {
+            result.put( entry.getKey(), new Long( entry.getValue().get() ) );
+        }
+
+        return result;
+
+    }
+
+    void mark() {
+
+        Meter meter = this.meter;
+
+        if ( meter != null )
+            meter.mark();
+
+    }
+
+    /**
+     * Record the event into the sliding window if somebody is using it.
+     */
+    void slide( int counter ) {
+
+        BenchmarkWindow sliding = this.sliding;
+
+        if ( sliding != null )
+            sliding.increment( counter );
+
+    }
+
+    void slideCompleted( long duration, boolean failed ) {
+
+        BenchmarkWindow sliding = this.sliding;
+
+        if ( sliding != null )
+            sliding.completed( duration, failed );
+
+    }
+
+    /**
+     * Record a value such as a payload size, a queue age, or a batch size.
+     * Each interval keeps the count, sum, min, max, and a histogram of the
+     * values so they roll over with the same 1/5/15 minute trackers as
+     * everything else.  Like start()/complete() this never locks and never
+     * allocates.
+     *
+     */
+    public void record( long value ) {
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        window.record( value );
+
+        BenchmarkWindow sliding = this.sliding;
+
+        if ( sliding != null )
+            sliding.record( value );
 
-        //this could happen if start() isn't called first.
-        if ( tracker1 == null )
-            return;
-        
-        tracker1.complete();
-        tracker5.complete();
-        tracker15.complete();
-        
     }
 
     /**
      * Used to compute stats on items that have absolute values and don't
-     * necessary have start/complete cycles.  This is internally mapped to
-     * start/complete for simplict.
+     * necessary have start/complete cycles.  This records a start and a
+     * completion in one step without a duration.  If all you need is a count
+     * use a Counter which is cheaper still.
      */
     public void increment() {
 
-        start();
-        complete();
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        window.startAndComplete();
+
+        BenchmarkWindow sliding = this.sliding;
+
+        if ( sliding != null )
+            sliding.startAndComplete();
+
+        mark();
         
     }
 
@@ -368,52 +1058,40 @@ public class Benchmark {
         if ( DISABLED )
             return;
 
-        if ( requiresFullInit ) {
-            initCaller( true );
-            clear();
-        }
+        if ( beforeMetric() == false )
+            return;
 
-        doRegisterWhenNecessary();
+        window.cache_hit();
         
-        tracker1.cache_hit();
-        tracker5.cache_hit();
-        tracker15.cache_hit();
+        slide( BenchmarkInterval.CACHE_HITS );
         
     }
 
     public void cache_miss() {
 
-        if ( DISABLED  )
+        if ( DISABLED )
             return;
 
-        if ( requiresFullInit ) {
-            initCaller( true );
-            clear();
-        }
+        if ( beforeMetric() == false )
+            return;
 
-        doRegisterWhenNecessary();
+        window.cache_miss();
         
-        tracker1.cache_miss();
-        tracker5.cache_miss();
-        tracker15.cache_miss();
+        slide( BenchmarkInterval.CACHE_MISSES );
         
     }
 
     public void cache_set() {
 
-        if ( DISABLED  )
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
             return;
 
-        if ( requiresFullInit ) {
-            initCaller( true );
-            clear();
-        }
+        window.cache_set();
 
-        doRegisterWhenNecessary();
-        
-        tracker1.cache_set();
-        tracker5.cache_set();
-        tracker15.cache_set();
+        slide( BenchmarkInterval.CACHE_SETS );
         
     }
 
@@ -440,11 +1118,116 @@ public class Benchmark {
     void doRegisterWhenNecessary() {
 
         if ( registered == false && name != null ) {
+
+            //our window was retired when we were evicted.  Its totals were
+            //folded into our parent so we start over on a fresh one.
+            if ( window.isClosed() )
+                reopen();
+
             registerBenchmark( name, this );
+
+        }
+
+    }
+
+    /**
+     * Replace the window retired by evict().  Only the first thread to get
+     * here after an eviction does anything.
+     */
+    private void reopen() {
+
+        synchronized( this ) {
+
+            BenchmarkWindow retired = window;
+
+            if ( retired.isClosed() == false )
+                return;
+
+            if ( sliding != null ) {
+                sliding.close();
+                sliding = null;
+            }
+
+            errors = null;
+
+            openWindow( retired );
+
         }
 
     }
     
+    /**
+     * Find our category and cache its settings.
+     */
+    void categorize() {
+
+        BenchmarkCategory category = BenchmarkCategory.resolve( name );
+
+        this.category = category;
+        disabled = category.isEnabled() == false;
+
+        if ( category.isLogOnRollover() ) {
+            rolloverLogger = Logger.getLogger( BenchmarkCategory.LOGGER_PREFIX + name );
+        } else {
+            rolloverLogger = null;
+        }
+
+        broadcastOnRollover = category.isBroadcastOnRollover();
+
+        categorySampleMask = category.getSampleMask();
+
+        //a meter is never dropped once somebody could be reading it.
+        if ( category.isMetered() )
+            openMeter();
+
+    }
+
+    /**
+     * Called by our window when the given tracker rolls over.  This is never
+     * called with the window locked so loggers and listeners can take as long
+     * as they like.
+     */
+    void onRollover( BenchmarkTracker tracker, BenchmarkMeta meta ) {
+
+        Logger logger = rolloverLogger;
+
+        if ( logger != null && logger.isLoggable( Level.INFO ) ) {
+            logger.info( tracker.getInterval() + "ms: " + meta.toMap() );
+        }
+
+        if ( broadcastOnRollover ) {
+            BenchmarkListenerRegistry.applyRollover( this, tracker, meta );
+        }
+
+    }
+
+    /**
+     * Sample durations instead of recording every one.  Starts and
+     * completions are still counted exactly but only 1 in N completions has
+     * its duration (and histogram) recorded.  At every rollover N is picked
+     * (as a power of two) so that about the given number of samples are taken
+     * per INTERVAL_1.  The mean and totals are scaled back up and the
+     * effective rate is reported by BenchmarkMeta.getSampleRate().  This is
+     * worth it for benchmarks which fire hundreds of thousands of times per
+     * second.  Zero (the default) turns sampling off unless the category
+     * gives a fixed sample rate.  Takes effect at the next rollover.
+     */
+    public void setSampleTarget( int samples ) {
+        sampleTarget = samples;
+    }
+
+    public int getSampleTarget() {
+        return sampleTarget;
+    }
+
+    /**
+     * The category this benchmark belongs to or null if it hasn't been
+     * registered yet.
+     */
+    public BenchmarkCategory getCategory() {
+        return category;
+    }
+
     /**
      * Return a child benchmark of the current method.  This can be used to
      * return a benchmark for a specific method based on a benchmark for a
@@ -465,20 +1248,28 @@ public class Benchmark {
      */
     public void initCaller( boolean full ) {
         
-        StackTraceElement caller = getCallerStackTraceElement();
+        CallerInfo caller = getCallSite( getCallerStackTraceElement() );
 
         this.name = classname;
 
         if ( this.name == null )
-            this.name = caller.getClassName();
-
-        lineNumber = caller.getLineNumber();
-        method = caller.getMethodName();
-        classname = caller.getClassName();
+            this.name = caller.classname;
         
         if ( full ) {
-            this.name = this.name + "." + caller.getMethodName();
+
+            //share the name with every other benchmark from this call site
+            //unless parent detection gave us a different class.
+            if ( this.name.equals( caller.classname ) ) {
+                this.name = caller.getName();
+            } else {
+                this.name = this.name + "." + caller.method;
+            }
+
         }
+
+        lineNumber = caller.lineNumber;
+        method = caller.method;
+        classname = caller.classname;
         
         requiresFullInit = false;
 
@@ -486,6 +1277,33 @@ public class Benchmark {
 
     // **** static code *********************************************************
 
+    /**
+     * Return the canonical CallerInfo for the given call site.  Thousands of
+     * CallerBenchmarks are often created from the same few lines of code so
+     * they all share one set of strings instead of each keeping their own
+     * copy.
+     */
+    static CallerInfo getCallSite( StackTraceElement caller ) {
+
+        CallerInfo info = callSites.get( caller );
+
+        if ( info != null )
+            return info;
+
+        info = new CallerInfo( caller.getLineNumber(),
+                               caller.getMethodName(),
+                               caller.getClassName() );
+
+        //call sites are bounded by the amount of code but don't trust that.
+        if ( callSites.size() >= MAX_CALL_SITES )
+            return info;
+
+        CallerInfo existing = callSites.putIfAbsent( caller, info );
+
+        return existing != null ? existing : info;
+
+    }
+
     public static String getCallerClassname() {
         return getCallerStackTraceElement().getClassName();
     }
@@ -587,8 +1405,14 @@ public class Benchmark {
         Benchmark benchmark = benchmarks.get( name );
 
         if ( benchmark == null ) {
-            benchmark = new Benchmark( name );
-            registerBenchmark( name, benchmark );
+
+            if ( isRegistryFull() ) {
+                overflowed.incrementAndGet();
+                return getOverflow();
+            }
+
+            benchmark = registerBenchmark( name, new Benchmark( name ) );
+
         }
 
         return benchmark;
@@ -602,45 +1426,310 @@ public class Benchmark {
      *
      */
     public static Map<String,String> getBenchmarksAsExternalMap() throws Exception {
+        return toExternalMap( getSnapshot() );
+    }
+
+    /**
+     * Format every benchmark in the given snapshot the same way as toString().
+     */
+    public static Map<String,String> toExternalMap( BenchmarkSnapshot snapshot ) {
 
         //NOTE: we must use hashtable here so that we're compatible with XMLRPC.
         Map<String,String> result = new Hashtable();
 
-        String key = null;
+        for ( int i = 0; i < snapshot.size(); ++i ) {
+            result.put( snapshot.getName( i ), snapshot.toString( i ) );
+        }
+
+        return result;
         
-        try {
+    }
+
+    /**
+     * Take a snapshot of every registered benchmark.  This doesn't roll
+     * anything over or block the threads recording into the benchmarks.  See
+     * BenchmarkSnapshot.
+     */
+    public static BenchmarkSnapshot getSnapshot() {
+        return BenchmarkSnapshot.capture( benchmarks.values() );
+    }
+
+    /**
+     * Take a snapshot of every benchmark named prefix or under prefix.
+     */
+    public static BenchmarkSnapshot getSnapshot( String prefix ) {
+        return BenchmarkSnapshot.capture( index.find( prefix ).values() );
+    }
+
+    /**
+     * True once MAX_BENCHMARKS have been registered.
+     */
+    static boolean isRegistryFull() {
+
+        if ( MAX_BENCHMARKS <= 0 )
+            return false;
+
+        int size = benchmarks.size();
+
+        //the overflow benchmark doesn't count.
+        if ( size >= MAX_BENCHMARKS && benchmarks.containsKey( OVERFLOW_NAME ) )
+            --size;
+
+        return size >= MAX_BENCHMARKS;
+
+    }
+
+    /**
+     * The benchmark which collects everything recorded against names that
+     * didn't fit in the registry.  It doesn't count against MAX_BENCHMARKS.
+     */
+    public static Benchmark getOverflow() {
+
+        Benchmark result = overflow;
+
+        if ( result != null )
+            return result;
+
+        synchronized( Benchmark.class ) {
+
+            if ( overflow == null ) {
+
+                result = new Benchmark( OVERFLOW_NAME );
+
+                result.registered = true;
+                benchmarks.put( OVERFLOW_NAME, result );
+                index.put( OVERFLOW_NAME, result );
+                result.categorize();
+
+                overflow = result;
+
+            }
+
+            return overflow;
+
+        }
+
+    }
+
+    /**
+     * Remove every benchmark which has been idle for IDLE_INTERVALS
+     * intervals from the registry and return how many were removed.  Called
+     * by the rollover thread about once per INTERVAL_1.
+     */
+    public static int evictIdle( long currentTimeMillis ) {
 
-            Iterator it = benchmarks.keySet().iterator();
+        if ( IDLE_INTERVALS <= 0 )
+            return 0;
 
-            while ( it.hasNext() ) {
+        long idle = (long)IDLE_INTERVALS * INTERVAL_1;
 
-                key = (String)it.next();
+        int result = 0;
 
-                Benchmark b = benchmarks.get( key );
+        Iterator<Benchmark> it = benchmarks.values().iterator();
 
-                if ( b == null )
-                    continue;
-                
-                result.put( b.getName(), b.toString() );
-                
-            } 
+        while ( it.hasNext() ) {
+
+            Benchmark benchmark = it.next();
+
+            if ( benchmark == overflow )
+                continue;
+
+            if ( benchmark.window.isIdle( currentTimeMillis, idle ) && evict( benchmark ) )
+                ++result;
 
-        } catch ( Exception t ) {
-            throw new Exception( "Caught exception on key: " + key , t );
         }
 
         return result;
-        
+
+    }
+
+    /**
+     * Remove the given benchmark from the registry.  Its lifetime totals are
+     * folded into its parent and its window is retired.  The benchmark isn't
+     * touched otherwise since somebody may still hold it.  If they use it
+     * again it registers itself again with a fresh window.
+     */
+    static boolean evict( Benchmark benchmark ) {
+
+        String name = benchmark.getName();
+
+        Map<String,Benchmark> benchmarks = Benchmark.benchmarks;
+
+        //out of the index first.  A new instance can only take the name once
+        //we're out of the registry and by then the index is free for it.
+        index.remove( name, benchmark );
+
+        //only remove the benchmark we decided was idle.  The name may have
+        //been registered again since.
+        if ( benchmarks instanceof ConcurrentMap ) {
+
+            if ( ((ConcurrentMap)benchmarks).remove( name, benchmark ) == false )
+                return false;
+
+        } else {
+
+            synchronized( benchmarks ) {
+
+                if ( benchmarks.get( name ) != benchmark )
+                    return false;
+
+                benchmarks.remove( name );
+
+            }
+
+        }
+
+        BenchmarkWindow retired = benchmark.window;
+
+        //close before we're unregistered so the next metric sees the window
+        //is retired and opens a new one.
+        retired.close();
+        benchmark.registered = false;
+
+        if ( FOLD_EVICTED ) {
+
+            Benchmark parent = benchmark.getParent();
+
+            //just what we recorded.  A LifetimeCheckpoint restore belongs to
+            //our name and is added back if we're registered again.
+            if ( parent != null )
+                parent.window.fold( retired.lifetime() );
+
+        }
+
+        benchmark.evicted();
+
+        evicted.incrementAndGet();
+
+        return true;
+
+    }
+
+    /**
+     * The registered benchmark which our totals are folded into when we're
+     * evicted.  The nearest registered prefix of our name by default.
+     */
+    Benchmark getParent() {
+
+        String name = getName();
+
+        int end = name.lastIndexOf( '.' );
+
+        while ( end > 0 ) {
+
+            name = name.substring( 0, end );
+
+            Benchmark parent = index.get( name );
+
+            if ( parent != null )
+                return parent;
+
+            end = name.lastIndexOf( '.' );
+
+        }
+
+        return null;
+
+    }
+
+    /**
+     * Called when this benchmark is evicted from the registry.
+     */
+    void evicted() { }
+
+    /**
+     * Stats on the registry itself: the number of benchmarks, the limit, and
+     * the number of names which overflowed or were evicted since startup.
+     */
+    public static Map<String,Long> getRegistryStats() {
+
+        Map<String,Long> result = new TreeMap();
+
+        result.put( "size",       new Long( benchmarks.size() ) );
+        result.put( "max",        new Long( MAX_BENCHMARKS ) );
+        result.put( "overflowed", new Long( overflowed.get() ) );
+        result.put( "evicted",    new Long( evicted.get() ) );
+
+        return result;
+
+    }
+
+    /**
+     * Make sure a benchmark found in the registry is of the type the caller
+     * asked for.  Typed benchmarks share the registry with plain ones so a name
+     * can only be used by one type.
+     */
+    static Benchmark checkType( String name, Benchmark benchmark, Class clazz ) {
+
+        if ( clazz.isInstance( benchmark ) == false ) {
+
+            throw new IllegalArgumentException( "Benchmark " + name +
+                                                " is already registered as a " +
+                                                benchmark.getClass().getName() );
+
+        }
+
+        return benchmark;
+
     }
 
     /**
-     * Register a benchmark with the system. 
+     * Register a benchmark with the system and return the benchmark which is
+     * registered under the name afterwards.  That's the given one unless
+     * another instance already has the name.  If the registry is full nothing
+     * is registered and the given benchmark is returned.  A benchmark which
+     * isn't registered still works but it won't show up anywhere.
      */
-    static void registerBenchmark( String name, Benchmark b ) {
+    static Benchmark registerBenchmark( String name, Benchmark b ) {
 
-        benchmarks.put( name, b );
+        //don't keep trying on every metric.
         b.registered = true;
 
+        //even a benchmark which doesn't make it into the registry records
+        //so it has to honor its category.
+        b.categorize();
+
+        if ( isRegistryFull() && benchmarks.containsKey( name ) == false ) {
+            overflowed.incrementAndGet();
+            return b;
+        }
+
+        //never replace another instance.  It may be an evicted benchmark
+        //coming back after a newer one took its name and whoever holds the
+        //newer one would be left recording into something nobody can see.
+        Benchmark existing = putIfAbsent( benchmarks, name, b );
+
+        if ( existing != null )
+            return existing;
+
+        index.putIfAbsent( name, b );
+
+        return b;
+
+    }
+
+    /**
+     * ConcurrentMap.putIfAbsent for the registry.  The tests replace it with a
+     * plain map so that has to work too.
+     */
+    private static Benchmark putIfAbsent( Map<String,Benchmark> benchmarks,
+                                          String name,
+                                          Benchmark b ) {
+
+        if ( benchmarks instanceof ConcurrentMap )
+            return ((ConcurrentMap<String,Benchmark>)benchmarks).putIfAbsent( name, b );
+
+        synchronized( benchmarks ) {
+
+            Benchmark existing = benchmarks.get( name );
+
+            if ( existing == null )
+                benchmarks.put( name, b );
+
+            return existing;
+
+        }
+
     }
 
     /**
@@ -660,9 +1749,23 @@ public class Benchmark {
             return result;
         }
 
-        readBenchmark( result, benchmark.getTracker1().getLast(),  "1min." );
-        readBenchmark( result, benchmark.getTracker5().getLast(),  "5min." );
-        readBenchmark( result, benchmark.getTracker15().getLast(), "15min." );
+        BenchmarkSnapshot snapshot = benchmark.snapshot();
+
+        readBenchmark( result, snapshot, 0, BenchmarkSnapshot.LAST_1,   "1min." );
+        readBenchmark( result, snapshot, 0, BenchmarkSnapshot.LAST_5,   "5min." );
+        readBenchmark( result, snapshot, 0, BenchmarkSnapshot.LAST_15,  "15min." );
+        readBenchmark( result, snapshot, 0, BenchmarkSnapshot.LIFETIME, "lifetime." );
+
+        result.put( "1min.rate",  new Double( snapshot.getRate( 0, BenchmarkSnapshot.RATE_1 ) ) );
+        result.put( "5min.rate",  new Double( snapshot.getRate( 0, BenchmarkSnapshot.RATE_5 ) ) );
+        result.put( "15min.rate", new Double( snapshot.getRate( 0, BenchmarkSnapshot.RATE_15 ) ) );
+
+        String[] errors = snapshot.getErrorNames( 0 );
+        long[] counts = snapshot.getErrorCounts( 0 );
+
+        for ( int i = 0; i < errors.length; ++i ) {
+            result.put( "errors." + errors[i], new Double( counts[i] ) );
+        }
 
         //TODO: add a 'full' param so that I can include, 'last' and 'now' metrics.
         
@@ -670,25 +1773,47 @@ public class Benchmark {
         
     }
 
-    private static Map<String,Double> readBenchmark( Map map, BenchmarkMeta meta, String prefix ) {
-
-        map.put( prefix + "duration",     new Double( meta.getDuration() ) );
-        map.put( prefix + "meanDuration", new Double( meta.getMeanDuration() ) );
-        map.put( prefix + "completed",    new Double( meta.getCompleted() ) );
-        map.put( prefix + "started",      new Double( meta.getStarted() ) );
+    private static Map<String,Double> readBenchmark( Map map,
+                                                     BenchmarkSnapshot snapshot,
+                                                     int i,
+                                                     int p,
+                                                     String prefix ) {
+
+        map.put( prefix + "duration",     new Double( snapshot.getDuration( i, p ) ) );
+        map.put( prefix + "meanDuration", new Double( snapshot.getMeanDuration( i, p ) ) );
+        map.put( prefix + "completed",    new Double( snapshot.get( i, p, BenchmarkSnapshot.COMPLETED ) ) );
+        map.put( prefix + "started",      new Double( snapshot.get( i, p, BenchmarkSnapshot.STARTED ) ) );
+        map.put( prefix + "p50",          new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.P50_NANOS ) ) );
+        map.put( prefix + "p99",          new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.P99_NANOS ) ) );
+        map.put( prefix + "p999",         new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.P999_NANOS ) ) );
+        map.put( prefix + "maxDuration",  new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.MAX_DURATION_NANOS ) ) );
+        map.put( prefix + "sampleRate",   new Double( snapshot.getSampleRate( i, p ) ) );
+        map.put( prefix + "failed",       new Double( snapshot.get( i, p, BenchmarkSnapshot.FAILED ) ) );
+        map.put( prefix + "meanFailedDuration", new Double( BenchmarkMeta.toMillis( snapshot.getMeanFailedDurationNanos( i, p ) ) ) );
+        map.put( prefix + "errorRate",    new Double( snapshot.getErrorRate( i, p ) ) );
+        map.put( prefix + "inFlight",     new Double( snapshot.get( i, p, BenchmarkSnapshot.IN_FLIGHT ) ) );
+        map.put( prefix + "peakInFlight", new Double( snapshot.get( i, p, BenchmarkSnapshot.PEAK_IN_FLIGHT ) ) );
+        map.put( prefix + "concurrency",  new Double( snapshot.getConcurrency( i, p ) ) );
+
+        //values passed to record().
+        map.put( prefix + "values",       new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_COUNT ) ) );
+        map.put( prefix + "valueSum",     new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_SUM ) ) );
+        map.put( prefix + "minValue",     new Double( snapshot.get( i, p, BenchmarkSnapshot.MIN_VALUE ) ) );
+        map.put( prefix + "maxValue",     new Double( snapshot.get( i, p, BenchmarkSnapshot.MAX_VALUE ) ) );
+        map.put( prefix + "meanValue",    new Double( snapshot.getMeanValue( i, p ) ) );
+        map.put( prefix + "valueP50",     new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_P50 ) ) );
+        map.put( prefix + "valueP99",     new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_P99 ) ) );
 
         //cache benchmarks have additional metadata.
+        if ( snapshot.isCache( i ) ) {
         
-        /*
-        if ( benchmark instanceof CacheBenchmark ) {
-
-            map.put( prefix + "hits", new Integer( meta.getCacheHits() ) );
-            map.put( prefix + "misses", new Integer( meta.getCacheMisses() ) );
-            map.put( prefix + "sets", new Integer( meta.getCacheSets() ) );
-            map.put( prefix + "efficiency", new Double( meta.getCacheEfficiency() ) );
+            map.put( prefix + "hits",       new Double( snapshot.get( i, p, BenchmarkSnapshot.CACHE_HITS ) ) );
+            map.put( prefix + "misses",     new Double( snapshot.get( i, p, BenchmarkSnapshot.CACHE_MISSES ) ) );
+            map.put( prefix + "sets",       new Double( snapshot.get( i, p, BenchmarkSnapshot.CACHE_SETS ) ) );
+            map.put( prefix + "evictions",  new Double( snapshot.get( i, p, BenchmarkSnapshot.CACHE_EVICTIONS ) ) );
+            map.put( prefix + "efficiency", new Double( snapshot.getCacheEfficiency( i, p ) ) );
 
         }
-        */
 
         return map;
         
@@ -703,6 +1828,22 @@ public class Benchmark {
         return benchmarks;
     }
 
+    /**
+     * Return every benchmark named prefix or under prefix (for example
+     * "org.foo" returns org.foo and org.foo.*) sorted by name.  This only
+     * walks the matching part of the index.
+     */
+    public static SortedMap<String,Benchmark> getBenchmarks( String prefix ) {
+        return index.find( prefix );
+    }
+
+    /**
+     * Return the name index of all registered benchmarks.
+     */
+    public static BenchmarkIndex getIndex() {
+        return index;
+    }
+
     // **** Object methods ******************************************************
 
     public String toString() {
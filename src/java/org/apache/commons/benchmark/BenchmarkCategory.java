@@ -0,0 +1,405 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.commons.benchmark;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p> log4j style categories for benchmarks.  Categories are named with the
+ * same dotted names as benchmarks so "org.foo" applies to the benchmark
+ * org.foo and everything under it (org.foo.Bar.baz etc) unless a more
+ * specific category overrides it.  A setting which isn't configured on a
+ * category is inherited from its parent.  The root category is "".
+ *
+ * <code>
+ *
+ * &lt;category name="org.foo" enabled="false" /&gt;
+ *
+ * &lt;category name="org.foo.Bar" enabled="true" logOnRollover="true" /&gt;
+ *
+ * </code>
+ *
+ * <p> Each benchmark finds its category once (when it's registered) and keeps
+ * it.  A disabled benchmark costs a single field check in beforeMetric().
+ * Changing a category resolves every registered benchmark again.
+ *
+ * <p> logOnRollover logs the last interval to the java.util.logging logger
+ * "benchmark." + name at INFO when an interval rolls over.
+ * broadcastOnRollover controls whether BenchmarkListeners are told about
+ * rollovers at all.  metered keeps 1, 5, and 15 minute rates (a Meter) for
+ * every benchmark from the moment it's registered.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class BenchmarkCategory {
+
+    /**
+     * Prefix for the loggers used by logOnRollover.
+     */
+    public static final String LOGGER_PREFIX = "benchmark.";
+
+    private static BenchmarkCategory root = new BenchmarkCategory( "", null );
+
+    private String name = null;
+
+    private BenchmarkCategory parent = null;
+
+    private Map<String,BenchmarkCategory> children = new ConcurrentHashMap();
+
+    //NOTE: null means inherit from the parent.
+
+    private volatile Boolean enabled = null;
+
+    private volatile Double sampleRate = null;
+
+    private volatile Boolean logOnRollover = null;
+
+    private volatile Boolean broadcastOnRollover = null;
+
+    private volatile Boolean metered = null;
+
+    /**
+     * The number of beginUpdate() calls without an endUpdate().  While
+     * positive changes are only noted.
+     */
+    private static int updating = 0;
+
+    private static boolean pending = false;
+
+    private BenchmarkCategory( String name, BenchmarkCategory parent ) {
+        this.name = name;
+        this.parent = parent;
+    }
+
+    /**
+     * Get the category with the given name, creating it (and any missing
+     * parents) if necessary.
+     */
+    public static BenchmarkCategory getCategory( String name ) {
+
+        synchronized( BenchmarkCategory.class ) {
+
+            BenchmarkCategory category = root;
+
+            if ( name == null || name.length() == 0 )
+                return category;
+
+            int begin = 0;
+
+            while ( true ) {
+
+                int end = name.indexOf( '.', begin );
+
+                if ( end == -1 )
+                    end = name.length();
+
+                String segment = name.substring( begin, end );
+
+                BenchmarkCategory child = category.children.get( segment );
+
+                if ( child == null ) {
+                    child = new BenchmarkCategory( name.substring( 0, end ), category );
+                    category.children.put( segment, child );
+                }
+
+                category = child;
+
+                if ( end == name.length() )
+                    return category;
+
+                begin = end + 1;
+
+            }
+
+        }
+
+    }
+
+    public static BenchmarkCategory getRoot() {
+        return root;
+    }
+
+    /**
+     * Find the most specific category for the given benchmark name.  Unlike
+     * getCategory() this never creates anything.
+     */
+    static BenchmarkCategory resolve( String name ) {
+
+        BenchmarkCategory category = root;
+
+        if ( name == null )
+            return category;
+
+        int begin = 0;
+
+        while ( begin <= name.length() ) {
+
+            int end = name.indexOf( '.', begin );
+
+            if ( end == -1 )
+                end = name.length();
+
+            BenchmarkCategory child = category.children.get( name.substring( begin, end ) );
+
+            if ( child == null )
+                break;
+
+            category = child;
+            begin = end + 1;
+
+        }
+
+        return category;
+
+    }
+
+    /**
+     * Drop every category.  Used by the unit tests.
+     */
+    static void reset() {
+
+        synchronized( BenchmarkCategory.class ) {
+            root = new BenchmarkCategory( "", null );
+        }
+
+        changed();
+
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BenchmarkCategory getParent() {
+        return parent;
+    }
+
+    /**
+     * True if benchmarks in this category record anything.  Defaults to true.
+     */
+    public boolean isEnabled() {
+
+        for ( BenchmarkCategory c = this; c != null; c = c.parent ) {
+
+            Boolean value = c.enabled;
+
+            if ( value != null )
+                return value.booleanValue();
+
+        }
+
+        return true;
+
+    }
+
+    public void setEnabled( Boolean enabled ) {
+        this.enabled = enabled;
+        changed();
+    }
+
+    /**
+     * The fraction (0 to 1) of timed calls which should be sampled.  Defaults
+     * to 1 which times every call.  Benchmarks sample 1 in N calls where N is
+     * a power of two so the rate they actually use is rounded to the nearest
+     * one (0.3 samples 1 in 4).  BenchmarkMeta.getSampleRate() reports the
+     * rate that was used.
+     */
+    public double getSampleRate() {
+
+        for ( BenchmarkCategory c = this; c != null; c = c.parent ) {
+
+            Double value = c.sampleRate;
+
+            if ( value != null )
+                return value.doubleValue();
+
+        }
+
+        return 1;
+
+    }
+
+    /**
+     * The sample rate as a mask for BenchmarkInterval: one less than the
+     * nearest power of two to 1 / rate.  Zero samples everything.
+     */
+    int getSampleMask() {
+
+        double rate = getSampleRate();
+
+        if ( rate >= 1 )
+            return 0;
+
+        long every = 1L << Math.min( 30, Math.round( Math.log( 1 / rate ) / Math.log( 2 ) ) );
+
+        return (int)every - 1;
+
+    }
+
+    public void setSampleRate( Double sampleRate ) {
+
+        if ( sampleRate != null &&
+             ( sampleRate.doubleValue() <= 0 || sampleRate.doubleValue() > 1 ) ) {
+
+            throw new IllegalArgumentException( "Sample rate must be in (0,1]: " + sampleRate );
+
+        }
+
+        this.sampleRate = sampleRate;
+        changed();
+
+    }
+
+    /**
+     * True if the last interval should be logged on every rollover.  Defaults
+     * to false.
+     */
+    public boolean isLogOnRollover() {
+
+        for ( BenchmarkCategory c = this; c != null; c = c.parent ) {
+
+            Boolean value = c.logOnRollover;
+
+            if ( value != null )
+                return value.booleanValue();
+
+        }
+
+        return false;
+
+    }
+
+    public void setLogOnRollover( Boolean logOnRollover ) {
+        this.logOnRollover = logOnRollover;
+        changed();
+    }
+
+    /**
+     * True if BenchmarkListeners should be told about rollovers.  Defaults to
+     * true.
+     */
+    public boolean isBroadcastOnRollover() {
+
+        for ( BenchmarkCategory c = this; c != null; c = c.parent ) {
+
+            Boolean value = c.broadcastOnRollover;
+
+            if ( value != null )
+                return value.booleanValue();
+
+        }
+
+        return true;
+
+    }
+
+    public void setBroadcastOnRollover( Boolean broadcastOnRollover ) {
+        this.broadcastOnRollover = broadcastOnRollover;
+        changed();
+    }
+
+    /**
+     * True if benchmarks should keep a Meter from the moment they're
+     * registered so that their exported rates cover every completion.
+     * Defaults to false in which case a benchmark only gets a meter (and
+     * non-zero rates) once somebody calls getMeter().  Turning this off
+     * doesn't drop meters which already exist.
+     */
+    public boolean isMetered() {
+
+        for ( BenchmarkCategory c = this; c != null; c = c.parent ) {
+
+            Boolean value = c.metered;
+
+            if ( value != null )
+                return value.booleanValue();
+
+        }
+
+        return false;
+
+    }
+
+    public void setMetered( Boolean metered ) {
+        this.metered = metered;
+        changed();
+    }
+
+    /**
+     * Hold off on finding the category of every benchmark again until
+     * endUpdate().  Every setter does that on its own which is a scan of the
+     * whole registry so a configuration which sets a lot of them at once
+     * should wrap them in beginUpdate()/endUpdate().
+     */
+    public static void beginUpdate() {
+
+        synchronized( BenchmarkCategory.class ) {
+            ++updating;
+        }
+
+    }
+
+    /**
+     * Apply everything changed since beginUpdate() in one pass.
+     */
+    public static void endUpdate() {
+
+        synchronized( BenchmarkCategory.class ) {
+
+            if ( --updating > 0 || pending == false )
+                return;
+
+            pending = false;
+
+        }
+
+        changed();
+
+    }
+
+    /**
+     * Find the category of every registered benchmark again.  A new category
+     * may be more specific than the one a benchmark has and settings which
+     * benchmarks cache (everything but the name) are only read here.
+     */
+    private static void changed() {
+
+        synchronized( BenchmarkCategory.class ) {
+
+            if ( updating > 0 ) {
+                pending = true;
+                return;
+            }
+
+        }
+
+        Iterator<Benchmark> it = Benchmark.benchmarks.values().iterator();
+
+        while ( it.hasNext() ) {
+            it.next().categorize();
+        }
+
+    }
+
+    public String toString() {
+        return "category: " + name;
+    }
+
+}
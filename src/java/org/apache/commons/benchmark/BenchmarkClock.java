@@ -0,0 +1,48 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> Source of time for all benchmarks.
+ *
+ * <p> We need two very different kinds of time.  Durations need a high
+ * resolution monotonic clock (System.nanoTime()) but bucket selection only
+ * needs to know which interval we're in so a coarse wall clock is more than
+ * enough.  Keeping the two behind one interface means a single event reads the
+ * clock exactly once and tests can swap in a ManualClock to get deterministic
+ * rollovers and durations.
+ *
+ * <p> The clock in use is Benchmark.CLOCK.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public abstract class BenchmarkClock {
+
+    /**
+     * High resolution time (in nanos) used to measure durations.  Only the
+     * difference between two values is meaningful.
+     */
+    public abstract long nanoTime();
+
+    /**
+     * Wall clock time (in millis) used to pick buckets and rollover.  This may
+     * be coarse.
+     */
+    public abstract long currentTimeMillis();
+
+}
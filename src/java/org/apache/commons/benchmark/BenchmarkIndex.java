@@ -0,0 +1,353 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.commons.benchmark;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p> Trie of benchmark names split on '.' which is kept alongside the
+ * registry.  Questions like "everything under org.foo" only have to walk the
+ * org.foo subtree instead of scanning and comparing every name in the
+ * registry.
+ *
+ * <p> Patterns passed to match() are dotted names where '*' matches exactly
+ * one segment and '**' matches any number of segments (including none).  For
+ * example "org.*.query" or "org.foo.**".
+ *
+ * <p> Lookups never lock.  Nodes are never removed (only their benchmark is
+ * cleared) since the set of name prefixes is small compared to the set of
+ * names.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class BenchmarkIndex {
+
+    private Node root = new Node();
+
+    /**
+     * Add a benchmark under the given name.  Replaces any existing benchmark
+     * with the same name.
+     */
+    public void put( String name, Benchmark benchmark ) {
+        node( name, true ).benchmark = benchmark;
+    }
+
+    /**
+     * Add a benchmark under the given name unless there already is one.
+     * Returns the benchmark that was already there or null.
+     */
+    public Benchmark putIfAbsent( String name, Benchmark benchmark ) {
+
+        Node node = node( name, true );
+
+        synchronized( node ) {
+
+            Benchmark existing = node.benchmark;
+
+            if ( existing == null )
+                node.benchmark = benchmark;
+
+            return existing;
+
+        }
+
+    }
+
+    /**
+     * Remove the benchmark with the given name (if any).
+     */
+    public void remove( String name ) {
+
+        Node node = node( name, false );
+
+        if ( node != null )
+            node.benchmark = null;
+
+    }
+
+    /**
+     * Remove the benchmark with the given name only if it's the given
+     * benchmark.  Used when a benchmark is dropped while another thread may
+     * have registered a new one with the same name.
+     */
+    public void remove( String name, Benchmark benchmark ) {
+
+        Node node = node( name, false );
+
+        if ( node != null && node.benchmark == benchmark )
+            node.benchmark = null;
+
+    }
+
+    public Benchmark get( String name ) {
+
+        Node node = node( name, false );
+
+        return node == null ? null : node.benchmark;
+
+    }
+
+    /**
+     * Return every benchmark named prefix or starting with prefix + "." sorted
+     * by name.  An empty prefix returns everything.
+     */
+    public SortedMap<String,Benchmark> find( String prefix ) {
+
+        SortedMap<String,Benchmark> result = new TreeMap();
+
+        Node node = node( prefix, false );
+
+        if ( node != null )
+            collect( node, result );
+
+        return result;
+
+    }
+
+    /**
+     * Return every benchmark whose name matches the given pattern sorted by
+     * name.
+     */
+    public SortedMap<String,Benchmark> match( String pattern ) {
+
+        SortedMap<String,Benchmark> result = new TreeMap();
+
+        match( root, split( pattern ), 0, result );
+
+        return result;
+
+    }
+
+    /**
+     * Add up the last complete 1 minute interval of every benchmark under the
+     * given prefix.
+     */
+    public BenchmarkMeta sum( String prefix ) {
+        return sum( prefix, Benchmark.INTERVAL_1 );
+    }
+
+    /**
+     * Add up the last complete interval (in millis) of every benchmark under
+     * the given prefix.
+     */
+    public BenchmarkMeta sum( String prefix, int interval ) {
+
+        BenchmarkMeta result = new BenchmarkMeta();
+
+        Iterator<Benchmark> it = find( prefix ).values().iterator();
+
+        while ( it.hasNext() ) {
+            result.add( it.next().getTracker( interval ).getLast() );
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Find the node for the given name.  When create is true any missing
+     * nodes along the way are added.
+     */
+    private Node node( String name, boolean create ) {
+
+        Node node = root;
+
+        if ( name == null || name.length() == 0 )
+            return node;
+
+        int begin = 0;
+
+        //NOTE: walk the name with indexOf instead of split() since this is
+        //done on every registration.
+        while ( node != null ) {
+
+            int end = name.indexOf( '.', begin );
+
+            if ( end == -1 )
+                end = name.length();
+
+            node = node.child( name.substring( begin, end ), create );
+
+            if ( end == name.length() )
+                break;
+
+            begin = end + 1;
+
+        }
+
+        return node;
+
+    }
+
+    private void collect( Node node, Map<String,Benchmark> result ) {
+
+        Benchmark benchmark = node.benchmark;
+
+        if ( benchmark != null )
+            result.put( benchmark.getName(), benchmark );
+
+        Map<String,Node> children = node.children;
+
+        if ( children == null )
+            return;
+
+        Iterator<Node> it = children.values().iterator();
+
+        while ( it.hasNext() ) {
+            collect( it.next(), result );
+        }
+
+    }
+
+    private void match( Node node,
+                        String[] pattern,
+                        int index,
+                        Map<String,Benchmark> result ) {
+
+        if ( index == pattern.length ) {
+
+            Benchmark benchmark = node.benchmark;
+
+            if ( benchmark != null )
+                result.put( benchmark.getName(), benchmark );
+
+            return;
+
+        }
+
+        String segment = pattern[ index ];
+
+        if ( "**".equals( segment ) ) {
+
+            //match zero segments here and then one or more segments below.
+            match( node, pattern, index + 1, result );
+
+            Map<String,Node> children = node.children;
+
+            if ( children != null ) {
+
+                Iterator<Node> it = children.values().iterator();
+
+                while ( it.hasNext() ) {
+                    match( it.next(), pattern, index, result );
+                }
+
+            }
+
+            return;
+
+        }
+
+        if ( "*".equals( segment ) ) {
+
+            Map<String,Node> children = node.children;
+
+            if ( children == null )
+                return;
+
+            Iterator<Node> it = children.values().iterator();
+
+            while ( it.hasNext() ) {
+                match( it.next(), pattern, index + 1, result );
+            }
+
+            return;
+
+        }
+
+        Node child = node.child( segment, false );
+
+        if ( child != null )
+            match( child, pattern, index + 1, result );
+
+    }
+
+    private static String[] split( String name ) {
+
+        if ( name == null || name.length() == 0 )
+            return new String[0];
+
+        List<String> result = new ArrayList();
+
+        int begin = 0;
+
+        while ( true ) {
+
+            int end = name.indexOf( '.', begin );
+
+            if ( end == -1 ) {
+                result.add( name.substring( begin ) );
+                break;
+            }
+
+            result.add( name.substring( begin, end ) );
+            begin = end + 1;
+
+        }
+
+        return result.toArray( new String[ result.size() ] );
+
+    }
+
+    static class Node {
+
+        volatile Benchmark benchmark = null;
+
+        /**
+         * Created on the first child since most nodes are leaves.
+         */
+        volatile ConcurrentHashMap<String,Node> children = null;
+
+        Node child( String segment, boolean create ) {
+
+            ConcurrentHashMap<String,Node> children = this.children;
+
+            if ( children == null ) {
+
+                if ( create == false )
+                    return null;
+
+                synchronized( this ) {
+
+                    if ( this.children == null )
+                        this.children = new ConcurrentHashMap();
+
+                    children = this.children;
+
+                }
+
+            }
+
+            Node child = children.get( segment );
+
+            if ( child != null || create == false )
+                return child;
+
+            child = new Node();
+
+            Node existing = children.putIfAbsent( segment, child );
+
+            return existing != null ? existing : child;
+
+        }
+
+    }
+
+}
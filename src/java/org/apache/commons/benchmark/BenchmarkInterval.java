@@ -0,0 +1,354 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * The live (mutable) counters for one bucket of a window.  These are folded
+ * into an immutable BenchmarkMeta when read.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+class BenchmarkInterval {
+
+    static final int STARTED      = 0;
+    static final int COMPLETED    = 1;
+    static final int DURATION     = 2; //nanoseconds
+    static final int FAILED       = 3;
+    static final int FAILED_DURATION = 4; //nanoseconds
+    static final int SAMPLED      = 5; //completions included in DURATION
+    static final int CACHE_HITS   = 6;
+    static final int CACHE_MISSES = 7;
+    static final int CACHE_SETS   = 8;
+    static final int CACHE_EVICTIONS = 9;
+
+    /**
+     * The number of counters a bucket needs to hold everything.  Typed
+     * benchmarks (Counter, Timer, CacheMeter) only need a run of them so their
+     * buckets are narrower.
+     */
+    static final int WIDTH = 10;
+
+    /**
+     * Shared placeholder for windows which haven't seen an event yet.  It's
+     * never written to since enter() opens the window first.
+     */
+    static final BenchmarkInterval UNOPENED = new BenchmarkInterval( STARTED, WIDTH, -1, -1 );
+
+    /**
+     * The sequence number of this bucket within its window.  -1 for never
+     * started.
+     *
+     * NOTE: this and the timestamp are only changed by reuse() while the
+     * bucket is the spare.  They're published to writers by the volatile
+     * write of BenchmarkWindow.current.
+     */
+    long seq;
+
+    /**
+     * The time this bucket was started.  -1 for never started.
+     */
+    long timestamp;
+
+    /**
+     * The first counter this bucket holds.  Counter N is kept at index
+     * N - first of the stripes.
+     */
+    final int first;
+
+    final StripedCounters counters;
+
+    /**
+     * Distribution of the durations (in nanos) recorded into this bucket.
+     * Null for buckets which don't keep durations.
+     */
+    final Histogram histogram;
+
+    /**
+     * The longest duration (in nanos) recorded into this bucket.
+     */
+    volatile long maxDuration = 0;
+
+    /**
+     * The values passed to Benchmark.record().  Null until the first value is
+     * recorded and then kept (and reset) along with the bucket.
+     */
+    volatile ValueStats valueStats = null;
+
+    /**
+     * The most operations in flight at once during this bucket.
+     */
+    volatile long peakInFlight = 0;
+
+    /**
+     * Only every (sampleMask + 1)th completion has its duration recorded.
+     * Zero records every duration.  This is always a power of two minus one
+     * so picking a sample is a mask instead of a division.  Set by the window
+     * before the bucket is published.
+     */
+    int sampleMask = 0;
+
+    private static final AtomicLongFieldUpdater<BenchmarkInterval> MAX_DURATION =
+        AtomicLongFieldUpdater.newUpdater( BenchmarkInterval.class, "maxDuration" );
+
+    private static final AtomicReferenceFieldUpdater<BenchmarkInterval,ValueStats> VALUE_STATS =
+        AtomicReferenceFieldUpdater.newUpdater( BenchmarkInterval.class, ValueStats.class, "valueStats" );
+
+    private static final AtomicLongFieldUpdater<BenchmarkInterval> PEAK_IN_FLIGHT =
+        AtomicLongFieldUpdater.newUpdater( BenchmarkInterval.class, "peakInFlight" );
+
+    BenchmarkInterval( int first, int width, long seq, long timestamp ) {
+        this.first = first;
+        this.counters = new StripedCounters( width );
+        this.histogram = holds( SAMPLED ) ? new Histogram() : null;
+        this.seq = seq;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * True if this bucket keeps the given counter.
+     */
+    boolean holds( int counter ) {
+        return counter >= first && counter - first < counters.getWidth();
+    }
+
+    /**
+     * Add to the given counter.  Counters this bucket doesn't keep (e.g. a
+     * start() on a CacheMeter) are dropped.
+     */
+    void add( int counter, long value ) {
+
+        if ( counter >= first )
+            counters.add( counter - first, value );
+
+    }
+
+    void increment( int counter ) {
+        add( counter, 1 );
+    }
+
+    /**
+     * Reset this bucket so it can be swapped in again.
+     */
+    void reuse( long seq, long timestamp ) {
+
+        counters.reset();
+
+        if ( histogram != null )
+            histogram.reset();
+        maxDuration = 0;
+        peakInFlight = 0;
+
+        ValueStats valueStats = this.valueStats;
+
+        if ( valueStats != null )
+            valueStats.reset();
+
+        this.seq = seq;
+        this.timestamp = timestamp;
+
+    }
+
+    /**
+     * True if nothing was recorded into this bucket.
+     */
+    boolean isEmpty() {
+
+        for ( int i = 0; i < counters.getWidth(); ++i ) {
+
+            if ( counters.sum( i ) != 0 )
+                return false;
+
+        }
+
+        //long running operations can span buckets with no other events.
+        if ( peakInFlight != 0 )
+            return false;
+
+        ValueStats valueStats = this.valueStats;
+
+        return valueStats == null || valueStats.isEmpty();
+
+    }
+
+    /**
+     * Record the duration (in nanos) of a completed operation.
+     */
+    void duration( long nanos ) {
+
+        add( DURATION, nanos );
+        increment( SAMPLED );
+        histogram.record( nanos );
+
+    }
+
+    /**
+     * Raise the max duration to the given value if it's higher.
+     */
+    void max( long nanos ) {
+
+        //only CAS when we have a new max which is rare once warmed up.
+        long max = maxDuration;
+
+        while ( nanos > max ) {
+
+            if ( MAX_DURATION.compareAndSet( this, max, nanos ) )
+                break;
+
+            max = maxDuration;
+
+        }
+
+    }
+
+    /**
+     * Record a completed operation.  Failures are counted on their own and
+     * their duration is kept apart from successful ones so errors which fail
+     * fast don't make the mean (or the percentiles) look better than they
+     * are.  A negative duration means we don't know it.
+     */
+    void completed( long nanos, boolean failed ) {
+
+        if ( failed ) {
+
+            //Counters don't track failures.
+            if ( holds( FAILED_DURATION ) == false )
+                return;
+
+            increment( FAILED );
+
+            if ( nanos >= 0 )
+                add( FAILED_DURATION, nanos );
+
+            return;
+
+        }
+
+        //CacheMeters don't count completions.
+        if ( first > COMPLETED )
+            return;
+
+        //the count is always exact.  When sampling only every Nth duration
+        //(per stripe) is recorded.  Which ones doesn't depend on the duration
+        //so the sampled mean and percentiles are unbiased.
+        long n = counters.addAndGet( COMPLETED - first, 1 );
+
+        //Counters call complete() too but have nowhere to keep durations.
+        if ( nanos < 0 || holds( SAMPLED ) == false )
+            return;
+
+        //the max is always exact.  A sample of 1 in N would miss the outlier
+        //it's there to catch.
+        max( nanos );
+
+        if ( ( n & sampleMask ) == 0 )
+            duration( nanos );
+
+    }
+
+    /**
+     * Raise the peak in flight count to the given value if it's higher.
+     */
+    void peak( long inFlight ) {
+
+        long peak = peakInFlight;
+
+        while ( inFlight > peak ) {
+
+            if ( PEAK_IN_FLIGHT.compareAndSet( this, peak, inFlight ) )
+                break;
+
+            peak = peakInFlight;
+
+        }
+
+    }
+
+    /**
+     * Record a value passed to Benchmark.record().
+     */
+    void value( long value ) {
+
+        ValueStats valueStats = this.valueStats;
+
+        if ( valueStats == null ) {
+
+            //if we lose the race somebody else's stats are just as good.
+            VALUE_STATS.compareAndSet( this, null, new ValueStats() );
+            valueStats = this.valueStats;
+
+        }
+
+        valueStats.record( value );
+
+    }
+
+    /**
+     * Fold the stripes into the given BenchmarkMeta.
+     */
+    void addTo( BenchmarkMeta meta ) {
+
+        meta.started      += sum( STARTED );
+        meta.completed    += sum( COMPLETED );
+        meta.durationNanos += estimate( sum( DURATION ), sum( COMPLETED ), sum( SAMPLED ), sampleMask );
+        meta.sampled      += sum( SAMPLED );
+        meta.failed       += sum( FAILED );
+        meta.failedDurationNanos += sum( FAILED_DURATION );
+        meta.cache_hits   += (int)sum( CACHE_HITS );
+        meta.cache_misses += (int)sum( CACHE_MISSES );
+        meta.cache_sets   += (int)sum( CACHE_SETS );
+        meta.cache_evictions += (int)sum( CACHE_EVICTIONS );
+
+        meta.maxDurationNanos = Math.max( meta.maxDurationNanos, maxDuration );
+        meta.peakInFlight = Math.max( meta.peakInFlight, peakInFlight );
+
+        if ( histogram != null )
+            meta.histogram.add( histogram );
+
+        ValueStats valueStats = this.valueStats;
+
+        if ( valueStats != null )
+            valueStats.addTo( meta );
+
+    }
+
+    /**
+     * The value of the given counter or zero if this bucket doesn't hold it.
+     */
+    long sum( int counter ) {
+        return holds( counter ) ? counters.sum( counter - first ) : 0;
+    }
+
+    /**
+     * Estimate the total duration of every completion from the sampled ones.
+     * When nothing was sampled away this is just the recorded duration.
+     */
+    static long estimate( long duration, long completed, long sampled, int sampleMask ) {
+
+        if ( sampleMask == 0 )
+            return duration;
+
+        if ( sampled == 0 )
+            return 0;
+
+        return (long)( (double)duration * (double)completed / (double)sampled );
+
+    }
+
+}
@@ -36,9 +36,62 @@ public class BenchmarkMeta {
 
     long duration = 0;
 
+    long durationNanos = 0;
+
+    long maxDurationNanos = 0;
+
+    /**
+     * Operations which failed and the total time (in nanoseconds) they took.
+     * These aren't included in completed or durationNanos.
+     */
+    long failed = 0;
+
+    long failedDurationNanos = 0;
+
+    /**
+     * Completions whose duration was actually measured.  When sampling this
+     * is less than completed and durationNanos is an estimate.
+     */
+    long sampled = 0;
+
+    /**
+     * The wall time (in millis) this meta covers.  For the current interval
+     * this is only the part that has already happened.
+     */
+    long elapsed = 0;
+
+    /**
+     * Operations in flight when this was read.
+     */
+    long inFlight = 0;
+
+    long peakInFlight = 0;
+
+    /**
+     * The number of values passed to Benchmark.record() and their sum.
+     */
+    long valueCount = 0;
+
+    long valueSum = 0;
+
+    long minValue = Long.MAX_VALUE;
+
+    long maxValue = Long.MIN_VALUE;
+
     int cache_hits = 0;
     int cache_misses = 0;
     int cache_sets = 0;
+    int cache_evictions = 0;
+
+    /**
+     * Distribution of durations (in nanos) for this interval.
+     */
+    Histogram histogram = new Histogram();
+
+    /**
+     * Distribution of the recorded values for this interval.
+     */
+    Histogram valueHistogram = new Histogram();
     
     /**
      * The time the current benchmark was started.  -1 for never started.
@@ -79,18 +132,235 @@ public class BenchmarkMeta {
         return duration > 0 ? duration / completed : 0;
     }
 
+    /**
+     * The total amount of time (in nanoseconds) that threads have spent
+     * between start() and complete() (or begin() and end()).  Use this for
+     * operations that take less than a millisecond.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Mean duration in nanoseconds.
+     */
+    public long getMeanDurationNanos() {
+        return completed > 0 ? durationNanos / completed : 0;
+    }
+
+    /**
+     * The longest duration (in nanoseconds) of any single operation.
+     */
+    public long getMaxDurationNanos() {
+        return maxDurationNanos;
+    }
+
+    /**
+     * The number of operations which failed.  Failures aren't included in
+     * getCompleted() or any of the durations.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * The total amount of time (in nanoseconds) spent in failed operations.
+     */
+    public long getFailedDurationNanos() {
+        return failedDurationNanos;
+    }
+
+    /**
+     * Mean duration of failed operations in nanoseconds.
+     */
+    public long getMeanFailedDurationNanos() {
+        return failed > 0 ? failedDurationNanos / failed : 0;
+    }
+
+    /**
+     * The number of completions whose duration was measured.
+     */
+    public long getSampled() {
+        return sampled;
+    }
+
+    /**
+     * The fraction (0 to 1) of completions whose duration was measured.  Below
+     * 1 the durations (and the mean) are estimated from the samples and the
+     * percentiles are those of the samples.
+     */
+    public double getSampleRate() {
+
+        if ( completed == 0 )
+            return 1;
+
+        return Math.min( 1, (double)sampled / (double)completed );
+
+    }
+
+    /**
+     * The percentage (0 to 100) of finished operations which failed.
+     */
+    public double getErrorRate() {
+
+        long total = completed + failed;
+
+        if ( total == 0 )
+            return 0;
+
+        return ( (double)failed / (double)total ) * (double)100;
+
+    }
+
+    /**
+     * The wall time (in millis) covered by this interval.  For the current
+     * interval this is the time from the start of the interval until now.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * The number of operations between start() and complete() when this was
+     * read.  This is a live gauge so it's the same for every interval of a
+     * benchmark and is exact across rollovers unlike started - completed.
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * The most operations in flight at the same time during this interval.
+     * If this keeps hitting the size of a connection pool (or the number of
+     * threads behind a lock) then it's saturated.
+     */
+    public long getPeakInFlight() {
+        return peakInFlight;
+    }
+
+    /**
+     * The mean number of operations in flight over this interval.  By
+     * Little's law this is the throughput times the mean duration which is
+     * just the total duration over the elapsed time.  Failed operations were
+     * in flight too so their time counts.
+     */
+    public double getConcurrency() {
+
+        if ( elapsed <= 0 )
+            return 0;
+
+        return (double)( durationNanos + failedDurationNanos ) /
+               ( (double)elapsed * BenchmarkWindow.NANOS_PER_MILLI );
+
+    }
+
+    /**
+     * The duration (in nanoseconds) that the given percentage (0 to 100) of
+     * operations completed within.  This comes from a histogram so it's
+     * accurate to within 6.25% and never under reports.  It's never more than
+     * the longest duration either.
+     */
+    public long getPercentileNanos( double percentile ) {
+        return Math.min( histogram.getValueAtPercentile( percentile ), maxDurationNanos );
+    }
+
+    /**
+     * Median duration in nanoseconds.
+     */
+    public long getP50Nanos() {
+        return getPercentileNanos( 50 );
+    }
+
+    /**
+     * 99th percentile duration in nanoseconds.
+     */
+    public long getP99Nanos() {
+        return getPercentileNanos( 99 );
+    }
+
+    /**
+     * 99.9th percentile duration in nanoseconds.
+     */
+    public long getP999Nanos() {
+        return getPercentileNanos( 99.9 );
+    }
+
+    /**
+     * The histogram of durations (in nanoseconds) for this interval.
+     */
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * The number of values recorded with Benchmark.record().
+     */
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * The sum of the recorded values.
+     */
+    public long getValueSum() {
+        return valueSum;
+    }
+
+    /**
+     * The smallest recorded value or 0 if nothing was recorded.
+     */
+    public long getMinValue() {
+        return valueCount > 0 ? minValue : 0;
+    }
+
+    /**
+     * The largest recorded value or 0 if nothing was recorded.
+     */
+    public long getMaxValue() {
+        return valueCount > 0 ? maxValue : 0;
+    }
+
+    public double getMeanValue() {
+        return valueCount > 0 ? (double)valueSum / (double)valueCount : 0;
+    }
+
+    /**
+     * The value that the given percentage (0 to 100) of recorded values were
+     * at or below.  Accurate to within 6.25% like the duration percentiles
+     * and never more than the largest value.  Negative values are counted as
+     * zero.
+     */
+    public long getValueAtPercentile( double percentile ) {
+
+        long result = valueHistogram.getValueAtPercentile( percentile );
+
+        return valueCount > 0 ? Math.min( result, Math.max( 0, maxValue ) ) : result;
+
+    }
+
+    /**
+     * The histogram of recorded values for this interval.
+     */
+    public Histogram getValueHistogram() {
+        return valueHistogram;
+    }
+
     public int getCacheHits() {
         return cache_hits;
     }
 
     public int getCacheMisses() {
-        return cache_hits;
+        return cache_misses;
     }
 
     public int getCacheSets() {
         return cache_sets;
     }
 
+    public int getCacheEvictions() {
+        return cache_evictions;
+    }
+
     /**
      * Compute the cache interval for this benchmark.  Since the benchmark is
      * interval based this value will change as the interval rolls forward.
@@ -107,22 +377,81 @@ public class BenchmarkMeta {
     }
 
     public void reset() {
+        histogram = new Histogram();
+        valueHistogram = new Histogram();
+        clear();
+    }
+
+    /**
+     * Reset every value so this can be reused.  Unlike reset() the
+     * histograms are cleared in place.
+     */
+    void clear() {
+        timestamp = -1;
         started = 0;
         completed = 0;
         duration = 0;
+        durationNanos = 0;
         cache_misses = 0;
         cache_hits = 0;
         cache_sets = 0;
+        cache_evictions = 0;
+        maxDurationNanos = 0;
+        failed = 0;
+        failedDurationNanos = 0;
+        sampled = 0;
+        elapsed = 0;
+        inFlight = 0;
+        peakInFlight = 0;
+        histogram.reset();
+        valueCount = 0;
+        valueSum = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = Long.MIN_VALUE;
+        valueHistogram.reset();
+    }
+
+    /**
+     * Add the values from the given meta into this one.
+     */
+    void add( BenchmarkMeta meta ) {
+
+        started       += meta.started;
+        completed     += meta.completed;
+        durationNanos += meta.durationNanos;
+        failed        += meta.failed;
+        failedDurationNanos += meta.failedDurationNanos;
+        sampled       += meta.sampled;
+        cache_hits    += meta.cache_hits;
+        cache_misses  += meta.cache_misses;
+        cache_sets    += meta.cache_sets;
+        cache_evictions += meta.cache_evictions;
+
+        valueCount    += meta.valueCount;
+        valueSum      += meta.valueSum;
+
+        maxDurationNanos = Math.max( maxDurationNanos, meta.maxDurationNanos );
+        peakInFlight = Math.max( peakInFlight, meta.peakInFlight );
+        minValue = Math.min( minValue, meta.minValue );
+        maxValue = Math.max( maxValue, meta.maxValue );
+
+        histogram.add( meta.histogram );
+        valueHistogram.add( meta.valueHistogram );
+
     }
 
     public String toString() {
 
-        return String.format( "timestamp: %s, started:%s, completed:%s, duration:%s, meanDuration:%s", 
+        return String.format( "timestamp: %s, started:%s, completed:%s, duration:%s, meanDuration:%s, p50:%s, p99:%s, p999:%s, max:%s", 
                               getTimestamp(),
-                              getStarted() +
-                              getCompleted() +
-                              getDuration() +
-                              getMeanDuration() );
+                              getStarted(),
+                              getCompleted(),
+                              getDuration(),
+                              getMeanDuration(),
+                              toMillis( getP50Nanos() ),
+                              toMillis( getP99Nanos() ),
+                              toMillis( getP999Nanos() ),
+                              toMillis( getMaxDurationNanos() ) );
 
     }
 
@@ -131,16 +460,38 @@ public class BenchmarkMeta {
      */
     public Map toMap() {
 
-        Map<String,Long> map = new HashMap();
+        Map<String,Object> map = new HashMap();
         
         map.put( "timestamp",     getTimestamp() );
         map.put( "duration",      getDuration() );
         map.put( "meanDuration",  getMeanDuration() );
         map.put( "completed",     getCompleted() );
         map.put( "started",       getStarted() );
+        map.put( "p50",           toMillis( getP50Nanos() ) );
+        map.put( "p99",           toMillis( getP99Nanos() ) );
+        map.put( "p999",          toMillis( getP999Nanos() ) );
+        map.put( "maxDuration",   toMillis( getMaxDurationNanos() ) );
+        map.put( "sampleRate",    getSampleRate() );
+        map.put( "failed",        getFailed() );
+        map.put( "errorRate",     getErrorRate() );
+        map.put( "inFlight",      getInFlight() );
+        map.put( "peakInFlight",  getPeakInFlight() );
+        map.put( "concurrency",   getConcurrency() );
+        map.put( "values",        getValueCount() );
+        map.put( "minValue",      getMinValue() );
+        map.put( "maxValue",      getMaxValue() );
+        map.put( "meanValue",     getMeanValue() );
 
         return map;
         
     }
     
+    /**
+     * Convert nanos to (fractional) millis so that percentiles are reported in
+     * the same unit as duration.
+     */
+    static double toMillis( long nanos ) {
+        return (double)nanos / (double)BenchmarkWindow.NANOS_PER_MILLI;
+    }
+    
 }
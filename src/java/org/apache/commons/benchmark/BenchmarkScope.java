@@ -0,0 +1,91 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.commons.benchmark;
+
+import java.io.*;
+
+/**
+ * <p> A single timed operation returned from Benchmark.time().  Closing the
+ * scope ends the operation so the usual try/finally pattern becomes:
+ *
+ * <code>
+ *
+ * BenchmarkScope scope = benchmark.time();
+ *
+ * try {
+ *
+ *     //do something expensive
+ *
+ * } finally {
+ *     scope.close();
+ * }
+ *
+ * </code>
+ *
+ * <p> The scope is just the benchmark and the token from begin().  It's
+ * small, final, and never stored anywhere so the JIT can often remove it with
+ * escape analysis but that depends on what it decided to inline so we don't
+ * promise it.  Code which must not allocate should use begin()/end() directly
+ * or Benchmark.time( Runnable ).
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public final class BenchmarkScope implements Closeable {
+
+    private final Benchmark benchmark;
+
+    private final long token;
+
+    private boolean failed = false;
+
+    private boolean closed = false;
+
+    private Throwable failure = null;
+
+    BenchmarkScope( Benchmark benchmark, long token ) {
+        this.benchmark = benchmark;
+        this.token = token;
+    }
+
+    /**
+     * Mark this operation as failed.  It's counted as a failure instead of a
+     * completion when the scope is closed.
+     */
+    public void fail( Throwable t ) {
+
+        failed = true;
+        failure = t;
+
+    }
+
+    /**
+     * End the operation.  Like any Closeable closing it again does nothing.
+     */
+    public void close() {
+
+        if ( closed )
+            return;
+
+        closed = true;
+
+        benchmark.end( token, failed, failure );
+
+    }
+
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p> Immutable copy of a set of benchmarks taken in one pass.  For every
+ * benchmark we keep the last and current 1, 5, and 15 minute intervals and
+ * the lifetime totals as rows of longs in one flat array so exporting tens of
+ * thousands of benchmarks doesn't build a BenchmarkMeta (and a pile of boxed
+ * values) for each of them.
+ *
+ * <p> Reading a tracker normally rolls its window over from the reader's
+ * thread.  A snapshot never does.  A bucket which has expired but hasn't been
+ * rolled over by the RolloverScheduler yet is just treated as closed.  Each
+ * benchmark is read under its window's rollover lock (which writers never
+ * take) so all its periods agree with each other.
+ *
+ * <p> Values are looked up by benchmark index, period, and field:
+ *
+ * <pre>
+ * BenchmarkSnapshot snapshot = Benchmark.getSnapshot();
+ *
+ * for ( int i = 0; i &lt; snapshot.size(); ++i ) {
+ *     long completed = snapshot.get( i, BenchmarkSnapshot.LAST_1, BenchmarkSnapshot.COMPLETED );
+ * }
+ * </pre>
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class BenchmarkSnapshot {
+
+    // **** periods *************************************************************
+
+    static final int LAST = 0;
+    static final int NOW  = 3;
+
+    public static final int LAST_1   = LAST;
+    public static final int LAST_5   = LAST + 1;
+    public static final int LAST_15  = LAST + 2;
+    public static final int NOW_1    = NOW;
+    public static final int NOW_5    = NOW + 1;
+    public static final int NOW_15   = NOW + 2;
+    public static final int LIFETIME = 6;
+
+    public static final int PERIODS = 7;
+
+    // **** fields **************************************************************
+
+    public static final int TIMESTAMP             = 0;
+    public static final int ELAPSED               = 1;
+    public static final int STARTED               = 2;
+    public static final int COMPLETED             = 3;
+    public static final int DURATION_NANOS        = 4;
+    public static final int MAX_DURATION_NANOS    = 5;
+    public static final int P50_NANOS             = 6;
+    public static final int P99_NANOS             = 7;
+    public static final int P999_NANOS            = 8;
+    public static final int SAMPLED               = 9;
+    public static final int FAILED                = 10;
+    public static final int FAILED_DURATION_NANOS = 11;
+    public static final int IN_FLIGHT             = 12;
+    public static final int PEAK_IN_FLIGHT        = 13;
+    public static final int VALUE_COUNT           = 14;
+    public static final int VALUE_SUM             = 15;
+    public static final int MIN_VALUE             = 16;
+    public static final int MAX_VALUE             = 17;
+    public static final int VALUE_P50             = 18;
+    public static final int VALUE_P99             = 19;
+    public static final int CACHE_HITS            = 20;
+    public static final int CACHE_MISSES          = 21;
+    public static final int CACHE_SETS            = 22;
+    public static final int CACHE_EVICTIONS       = 23;
+
+    public static final int FIELDS = 24;
+
+    // **** rates ***************************************************************
+
+    public static final int RATE_1  = 0;
+    public static final int RATE_5  = 1;
+    public static final int RATE_15 = 2;
+
+    static final int RATES = 3;
+
+    private static final String[] EMPTY_ERRORS = new String[ 0 ];
+
+    private static final long[] EMPTY_COUNTS = new long[ 0 ];
+
+    /**
+     * When (in millis) this snapshot was taken.
+     */
+    private long timestamp = 0;
+
+    /**
+     * The benchmark names sorted so we can binary search them.
+     */
+    private String[] names = null;
+
+    /**
+     * True for cache benchmarks which have hits/misses/sets worth exporting.
+     */
+    private boolean[] cache = null;
+
+    private int[] lineNumbers = null;
+
+    /**
+     * values[ ( index * PERIODS + period ) * FIELDS + field ]
+     */
+    private long[] values = null;
+
+    /**
+     * rates[ index * RATES + rate ]
+     */
+    private double[] rates = null;
+
+    /**
+     * Failures by exception class.  Null entries have no failures.
+     */
+    private String[][] errorNames = null;
+
+    private long[][] errorCounts = null;
+
+    private BenchmarkSnapshot( int size, long timestamp ) {
+
+        this.timestamp = timestamp;
+
+        names       = new String[ size ];
+        cache       = new boolean[ size ];
+        lineNumbers = new int[ size ];
+        values      = new long[ size * PERIODS * FIELDS ];
+        rates       = new double[ size * RATES ];
+        errorNames  = new String[ size ][];
+        errorCounts = new long[ size ][];
+
+    }
+
+    /**
+     * Take a snapshot of the given benchmarks.
+     */
+    public static BenchmarkSnapshot capture( Collection<Benchmark> benchmarks ) {
+
+        Benchmark[] sorted = benchmarks.toArray( new Benchmark[ benchmarks.size() ] );
+
+        //the collection can shrink while we copy it.
+        int size = 0;
+
+        while ( size < sorted.length && sorted[ size ] != null ) {
+            ++size;
+        }
+
+        Arrays.sort( sorted, 0, size, new Comparator<Benchmark>() {
+
+                public int compare( Benchmark b1, Benchmark b2 ) {
+                    return b1.getName().compareTo( b2.getName() );
+                }
+
+            } );
+
+        BenchmarkSnapshot snapshot = new BenchmarkSnapshot( size, Benchmark.CLOCK.currentTimeMillis() );
+
+        //reused for every benchmark.
+        BenchmarkTracker[] trackers = new BenchmarkTracker[ 3 ];
+        BenchmarkMeta meta = new BenchmarkMeta();
+
+        for ( int i = 0; i < size; ++i ) {
+
+            Benchmark benchmark = sorted[i];
+
+            //read the window once so its trackers can't come from a window
+            //swapped in (by eviction and reuse) between the two reads.
+            BenchmarkWindow window = benchmark.window;
+
+            trackers[0] = window.getTracker( Benchmark.INTERVAL_1 );
+            trackers[1] = window.getTracker( Benchmark.INTERVAL_5 );
+            trackers[2] = window.getTracker( Benchmark.INTERVAL_15 );
+
+            window.capture( snapshot.timestamp, trackers, meta, snapshot, i );
+
+            snapshot.names[i] = benchmark.getName();
+            snapshot.lineNumbers[i] = benchmark.lineNumber;
+            snapshot.cache[i] = benchmark instanceof CacheMeter || benchmark instanceof CacheBenchmark;
+
+            Meter meter = benchmark.meter;
+
+            if ( meter != null )
+                meter.readRates( snapshot.rates, i * RATES );
+
+            snapshot.errors( i, benchmark );
+
+        }
+
+        return snapshot;
+
+    }
+
+    /**
+     * Copy the given meta into a row.
+     */
+    void set( int index, int period, BenchmarkMeta meta ) {
+
+        int offset = ( index * PERIODS + period ) * FIELDS;
+
+        values[ offset + TIMESTAMP ]             = meta.timestamp;
+        values[ offset + ELAPSED ]               = meta.elapsed;
+        values[ offset + STARTED ]               = meta.started;
+        values[ offset + COMPLETED ]             = meta.completed;
+        values[ offset + DURATION_NANOS ]        = meta.durationNanos;
+        values[ offset + MAX_DURATION_NANOS ]    = meta.maxDurationNanos;
+        values[ offset + P50_NANOS ]             = meta.getP50Nanos();
+        values[ offset + P99_NANOS ]             = meta.getP99Nanos();
+        values[ offset + P999_NANOS ]            = meta.getP999Nanos();
+        values[ offset + SAMPLED ]               = meta.sampled;
+        values[ offset + FAILED ]                = meta.failed;
+        values[ offset + FAILED_DURATION_NANOS ] = meta.failedDurationNanos;
+        values[ offset + IN_FLIGHT ]             = meta.inFlight;
+        values[ offset + PEAK_IN_FLIGHT ]        = meta.peakInFlight;
+        values[ offset + VALUE_COUNT ]           = meta.valueCount;
+        values[ offset + VALUE_SUM ]             = meta.valueSum;
+        values[ offset + MIN_VALUE ]             = meta.getMinValue();
+        values[ offset + MAX_VALUE ]             = meta.getMaxValue();
+        values[ offset + VALUE_P50 ]             = meta.getValueAtPercentile( 50 );
+        values[ offset + VALUE_P99 ]             = meta.getValueAtPercentile( 99 );
+        values[ offset + CACHE_HITS ]            = meta.cache_hits;
+        values[ offset + CACHE_MISSES ]          = meta.cache_misses;
+        values[ offset + CACHE_SETS ]            = meta.cache_sets;
+        values[ offset + CACHE_EVICTIONS ]       = meta.cache_evictions;
+
+    }
+
+    private void errors( int index, Benchmark benchmark ) {
+
+        errorNames[ index ] = EMPTY_ERRORS;
+        errorCounts[ index ] = EMPTY_COUNTS;
+
+        Map<String,AtomicLong> errors = benchmark.errors;
+
+        if ( errors == null || errors.isEmpty() )
+            return;
+
+        //the map is bounded by MAX_ERROR_CLASSES but can still grow while we
+        //copy it.
+        List<Map.Entry<String,AtomicLong>> entries = new ArrayList( errors.entrySet() );
+
+        String[] names = new String[ entries.size() ];
+        long[] counts = new long[ entries.size() ];
+
+        for ( int i = 0; i < names.length; ++i ) {
+
+            Map.Entry<String,AtomicLong> entry = entries.get( i );
+
+            names[i] = entry.getKey();
+            counts[i] = entry.getValue().get();
+
+        }
+
+        errorNames[ index ] = names;
+        errorCounts[ index ] = counts;
+
+    }
+
+    // **** lookups *************************************************************
+
+    /**
+     * When (in millis) this snapshot was taken.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The number of benchmarks in this snapshot.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    public String getName( int index ) {
+        return names[ index ];
+    }
+
+    /**
+     * The index of the benchmark with the given name or -1 if it's not in this
+     * snapshot.
+     */
+    public int indexOf( String name ) {
+
+        int index = Arrays.binarySearch( names, name );
+
+        return index >= 0 ? index : -1;
+
+    }
+
+    /**
+     * True if the benchmark is a CacheMeter or CacheBenchmark.
+     */
+    public boolean isCache( int index ) {
+        return cache[ index ];
+    }
+
+    public int getLineNumber( int index ) {
+        return lineNumbers[ index ];
+    }
+
+    /**
+     * Get the given field (STARTED, COMPLETED, ...) for the given period
+     * (LAST_1, NOW_5, LIFETIME, ...) of a benchmark.
+     */
+    public long get( int index, int period, int field ) {
+        return values[ ( index * PERIODS + period ) * FIELDS + field ];
+    }
+
+    /**
+     * The smoothed completion rate (RATE_1, RATE_5, RATE_15) in events per
+     * second.  Zero for benchmarks without a meter (see
+     * BenchmarkCategory.isMetered).
+     */
+    public double getRate( int index, int rate ) {
+        return rates[ index * RATES + rate ];
+    }
+
+    /**
+     * The exception classes which failures were recorded with.
+     */
+    public String[] getErrorNames( int index ) {
+        return errorNames[ index ].clone();
+    }
+
+    /**
+     * The number of failures for each of getErrorNames().
+     */
+    public long[] getErrorCounts( int index ) {
+        return errorCounts[ index ].clone();
+    }
+
+    // **** derived values ******************************************************
+    //
+    // These are computed the same way as the BenchmarkMeta methods with the
+    // same names.
+
+    /**
+     * The total duration in millis.
+     */
+    public long getDuration( int index, int period ) {
+        return get( index, period, DURATION_NANOS ) / BenchmarkWindow.NANOS_PER_MILLI;
+    }
+
+    public long getMeanDuration( int index, int period ) {
+
+        long duration = getDuration( index, period );
+
+        return duration > 0 ? duration / get( index, period, COMPLETED ) : 0;
+
+    }
+
+    public long getMeanFailedDurationNanos( int index, int period ) {
+
+        long failed = get( index, period, FAILED );
+
+        return failed > 0 ? get( index, period, FAILED_DURATION_NANOS ) / failed : 0;
+
+    }
+
+    public double getSampleRate( int index, int period ) {
+
+        long completed = get( index, period, COMPLETED );
+
+        if ( completed == 0 )
+            return 1;
+
+        return Math.min( 1, (double)get( index, period, SAMPLED ) / (double)completed );
+
+    }
+
+    public double getErrorRate( int index, int period ) {
+
+        long failed = get( index, period, FAILED );
+        long total = get( index, period, COMPLETED ) + failed;
+
+        if ( total == 0 )
+            return 0;
+
+        return ( (double)failed / (double)total ) * (double)100;
+
+    }
+
+    public double getConcurrency( int index, int period ) {
+
+        long elapsed = get( index, period, ELAPSED );
+
+        if ( elapsed <= 0 )
+            return 0;
+
+        long nanos = get( index, period, DURATION_NANOS ) +
+                     get( index, period, FAILED_DURATION_NANOS );
+
+        return (double)nanos / ( (double)elapsed * BenchmarkWindow.NANOS_PER_MILLI );
+
+    }
+
+    public double getMeanValue( int index, int period ) {
+
+        long count = get( index, period, VALUE_COUNT );
+
+        return count > 0 ? (double)get( index, period, VALUE_SUM ) / (double)count : 0;
+
+    }
+
+    public double getCacheEfficiency( int index, int period ) {
+
+        long hits = get( index, period, CACHE_HITS );
+        long total = hits + get( index, period, CACHE_MISSES );
+
+        if ( total == 0 )
+            return 0;
+
+        return ( (double)hits / (double)total ) * (double)100;
+
+    }
+
+    /**
+     * Get a field which is kept in nanos as (fractional) millis.
+     */
+    public double getMillis( int index, int period, int field ) {
+        return BenchmarkMeta.toMillis( get( index, period, field ) );
+    }
+
+    // **** formatting **********************************************************
+
+    /**
+     * Format a benchmark the same way as Benchmark.toString().
+     */
+    public String toString( int index ) {
+
+        return "1min: {"  + toString( index, NOW_1 ) + " " + toString( index, LAST_1 ) + " }" + " " +
+               "5min: {"  + toString( index, NOW_5 ) + " " + toString( index, LAST_5 ) + " }" + " " +
+               "15min: {" + toString( index, NOW_15 ) + " " + toString( index, LAST_15 ) + " }" +
+               ", line number: " +
+               lineNumbers[ index ]
+        ;
+
+    }
+
+    private String toString( int index, int period ) {
+
+        return ( period >= NOW ? "now=(" : "last=(" ) +
+            String.format( "timestamp: %s, started:%s, completed:%s, duration:%s, meanDuration:%s, p50:%s, p99:%s, p999:%s, max:%s",
+                           get( index, period, TIMESTAMP ),
+                           get( index, period, STARTED ),
+                           get( index, period, COMPLETED ),
+                           getDuration( index, period ),
+                           getMeanDuration( index, period ),
+                           getMillis( index, period, P50_NANOS ),
+                           getMillis( index, period, P99_NANOS ),
+                           getMillis( index, period, P999_NANOS ),
+                           getMillis( index, period, MAX_DURATION_NANOS ) ) +
+            ")";
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * Threadlocal which hold BenchmarkThreadLocalClosures.
+ *
+ * <p> This used to be a StrongThreadLocal which kept every thread it ever saw
+ * in a map.  A plain ThreadLocal keeps the closure on the Thread itself so it's
+ * reclaimed as soon as the thread dies no matter how many threads come and
+ * go.  Code which can't afford any per thread state (huge numbers of short
+ * lived threads) should use begin()/end( token ) instead which keeps the start
+ * time in the caller's scope.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+class BenchmarkThreadLocal extends ThreadLocal {
+
+    protected Object initialValue() {
+        return new BenchmarkThreadLocalClosure();
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * We keep one threadlocal variable per thread but we keep the data in a
+ * lexical closure so that we don't have to have multiple thread locals each
+ * with dedicated objects.
+ *
+ * <p> Start times are kept on a small stack so that nested start/complete
+ * pairs on the same thread (even across different benchmarks) don't clobber
+ * each other.  Every entry remembers the window that pushed it and complete()
+ * takes the most recent entry for its own window.  So pairs on two
+ * benchmarks may interleave instead of nesting, and a start() whose
+ * complete() never happens (or is skipped because the benchmark was disabled
+ * in between) only leaves a stale entry behind for its own benchmark.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+class BenchmarkThreadLocalClosure {
+
+    static final long NOT_STARTED = Long.MIN_VALUE;
+
+    /**
+     * The deepest we'll track nested start() calls on one thread.  Code which
+     * calls start() without ever calling complete() would otherwise grow the
+     * stack forever.  Past this the oldest entry is dropped since that's the
+     * one most likely to never be completed.
+     */
+    static final int MAX_DEPTH = 64;
+
+    /**
+     * The times (Benchmark.CLOCK.nanoTime()) that the open benchmarks were
+     * started.
+     */
+    long[] started = new long[ 4 ];
+
+    /**
+     * The window that pushed each entry of started.
+     */
+    Object[] owners = new Object[ 4 ];
+
+    int depth = 0;
+
+    void push( Object owner, long nanos ) {
+
+        if ( depth == MAX_DEPTH ) {
+            remove( 0 );
+        }
+
+        if ( depth == started.length ) {
+
+            long[] resized = new long[ started.length * 2 ];
+            System.arraycopy( started, 0, resized, 0, started.length );
+            started = resized;
+
+            Object[] resizedOwners = new Object[ owners.length * 2 ];
+            System.arraycopy( owners, 0, resizedOwners, 0, owners.length );
+            owners = resizedOwners;
+
+        }
+
+        owners[ depth ] = owner;
+        started[ depth++ ] = nanos;
+
+    }
+
+    /**
+     * Take the most recent start time pushed by the given owner off the
+     * stack.  This is nearly always the top entry.
+     */
+    long pop( Object owner ) {
+
+        for ( int i = depth - 1; i >= 0; --i ) {
+
+            if ( owners[i] == owner ) {
+
+                long result = started[i];
+
+                remove( i );
+
+                return result;
+
+            }
+
+        }
+
+        return NOT_STARTED;
+
+    }
+
+    private void remove( int index ) {
+
+        int moved = depth - index - 1;
+
+        //an entry above us belongs to a pair which started after ours and
+        //hasn't completed yet.
+        if ( moved > 0 ) {
+            System.arraycopy( started, index + 1, started, index, moved );
+            System.arraycopy( owners, index + 1, owners, index, moved );
+        }
+
+        //don't pin the window.
+        owners[ --depth ] = null;
+
+    }
+
+}
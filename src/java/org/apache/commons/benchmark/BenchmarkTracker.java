@@ -19,41 +19,35 @@ package org.apache.commons.benchmark;
 import java.util.*;
 
 /**
- * <p> Handles physically tracking each benchmark and handling rollover.  Note
- * that this class is MUTABLE so if you're working with it and additional
- * threads are calling start/complete the values will change.  This is normally
- * fine but if you're trying to perform some type of benchmark analsis then you
- * shouldn't hold on to the tracker long.
+ * <p> A view over a benchmark's BenchmarkWindow which rolls over with a given
+ * interval (1, 5, 15 minutes).  Note that this class is MUTABLE so if you're
+ * working with it and additional threads are calling start/complete the values
+ * will change.  This is normally fine but if you're trying to perform some
+ * type of benchmark analsis then you shouldn't hold on to the tracker long.
  * 
+ * <p> The tracker doesn't record anything itself.  Every event is recorded
+ * once into the window and the tracker sums the buckets which fall into its
+ * 'now' and 'last' intervals when they're read.
+ *
  * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
  * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
  */
 public class BenchmarkTracker {
 
     /**
-     * Mutext used to prevent threads from corrupting start/complete cycles.
+     * The window hosting this tracker.
      */
-    private Object MUTEX = new Object();
-
-    /**
-     * The benchmark hosting this tracker.
-     */
-    private Benchmark parent = null; 
+    private BenchmarkWindow window = null;
 
     /**
      * Interval (in millis) that we rollover this tracked benchmark.
      */
     private int interval = 0;
     
-    // **** Last variables after the rollover ***********************************
-
     /**
-     * Keep track of duration.
+     * The number of window buckets in each interval.
      */
-    private static BenchmarkThreadLocal threadlocal = new BenchmarkThreadLocal();
-
-    BenchmarkMeta now = new BenchmarkMeta();
-    BenchmarkMeta last = new BenchmarkMeta();
+    private int bucketsPerInterval = 0;
 
     /**
      * The interval that this value is rolled over with (1, 5, 15 minutes)
@@ -64,57 +58,48 @@ public class BenchmarkTracker {
     
     /**
      * 
-     * Create a new <code>BenchmarkTracker</code> instance.
+     * Create a new <code>BenchmarkTracker</code> instance on the given
+     * benchmark's window.
      */
     public BenchmarkTracker( int interval, Benchmark parent ) {
+        this( parent.window, interval );
+    }
+
+    BenchmarkTracker( BenchmarkWindow window, int interval ) {
+        this.window = window;
         this.interval = interval;
-        this.parent = parent;
+        this.bucketsPerInterval = window.getBucketsPerInterval( interval );
+    }
+
+    int getBucketsPerInterval() {
+        return bucketsPerInterval;
+    }
+
+    BenchmarkWindow getWindow() {
+        return window;
     }
 
     BenchmarkTracker rollover() {
-        rollover( System.currentTimeMillis() );
+        rollover( Benchmark.CLOCK.currentTimeMillis() );
         return this;
     }
 
     /**
-     * Do a physical rollover from now to -> last .
+     * Force a rollover.  This starts a new bucket in the underlying window
+     * right away.
      *
      * @author <a href="mailto:burton@tailrank.com">Kevin A. Burton</a>
      */
     BenchmarkTracker rollover( long currentTimeMillis ) {
 
-        //need to perform a swap and save the current benchmark.
-        last = now;
-
-        //FIXME: we could use a daemon thread to handle automatic rollover so
-        //that we don't miss anything if a metric just isn't being called very
-        //often.  Further, we should be able to read the 'last' metrics without
-        //having to block.1
-        
-        //if we've slept for too long we have to start fresh
-        if ( currentTimeMillis - last.timestamp > (interval * 2) ) {
-            last.reset();
-        } 
-
-        if ( last.getTimestamp() > 0 ) {
-            BenchmarkListenerRegistry.applyRollover( parent, this, last );
-        }
-        
-        //reset the benchmark (note.  We could probably save a bit of GC here by
-        //swapping the last and now values since the last would just be
-        //discarded anyway.
-        now = new BenchmarkMeta();
-        now.timestamp = currentTimeMillis;
-
-        //this isn't needed since it's a new benchmark.
-        //now.reset();
+        window.advance( currentTimeMillis, true );
 
         return this;
 
     }
 
     BenchmarkTracker rolloverWhenNecessary() {
-        return rolloverWhenNecessary( System.currentTimeMillis() );
+        return rolloverWhenNecessary( Benchmark.CLOCK.currentTimeMillis() );
     }
     
     /**
@@ -122,166 +107,91 @@ public class BenchmarkTracker {
      */
     BenchmarkTracker rolloverWhenNecessary( long currentTimeMillis ) {
 
-        if ( currentTimeMillis - now.timestamp > interval )
-            rollover( currentTimeMillis );
+        window.advanceWhenNecessary( currentTimeMillis );
 
         return this;
         
     }
 
-    void start() {
-
-        if ( parent.DISABLED  )
-            return;
-
-        long currentTimeMillis = System.currentTimeMillis();
-
-        //we need to synchronize on this individual metadata unit because if we
-        //didn't then another thread could come in, and corrupt our metadata
-        //about this benchmark.  Since benchmarks are often performed within
-        //threads this is important.
-        synchronized( MUTEX ) {
-            rolloverWhenNecessary( currentTimeMillis );
-            ++now.started;
-        }
-
-        doLocalStart( currentTimeMillis );
-
-    }
+    // **** metadata ************************************************************
 
-    void complete() {
+    /**
+     * Get the values for the previous interval.
+     */
+    public BenchmarkMeta getLast() {
 
-        if ( parent.DISABLED  )
-            return;
+        BenchmarkInterval current = rolloverWhenNecessary().window.current;
 
-        long currentTimeMillis = System.currentTimeMillis();
+        long from = groupStart( current.seq ) - bucketsPerInterval;
 
-        synchronized( MUTEX ) {
-            rolloverWhenNecessary( currentTimeMillis );
-            ++now.completed;
-        }
+        return window.sum( from,
+                           from + bucketsPerInterval - 1,
+                           timestamp( current, from ) );
         
-        doLocalCompleted( currentTimeMillis );
-
     }
 
-    void cache_hit() {
+    /**
+     * Get the values for the current interval.  The buckets are folded into a
+     * new BenchmarkMeta each time this is called so the result won't change as
+     * other threads keep calling start/complete.
+     */
+    public BenchmarkMeta getNow() {
 
-        if ( parent.DISABLED  )
-            return;
+        BenchmarkInterval current = rolloverWhenNecessary().window.current;
 
-        long currentTimeMillis = System.currentTimeMillis();
+        long from = groupStart( current.seq );
 
-        synchronized( MUTEX ) {
-            rolloverWhenNecessary( currentTimeMillis );
-            ++now.cache_hits;
-        }
+        return window.sum( from, current.seq, timestamp( current, from ) );
 
     }
 
-    void cache_miss() {
-
-        if ( parent.DISABLED  )
-            return;
-
-        long currentTimeMillis = System.currentTimeMillis();
-
-        synchronized( MUTEX ) {
-            rolloverWhenNecessary( currentTimeMillis );
-            ++now.cache_misses;
-        }
-
-    }
+    /**
+     * Sum the last (or current) interval as of the given time into the given
+     * meta without rolling the window over.  The caller must hold the
+     * window's lock.
+     */
+    void read( long currentTimeMillis, boolean last, BenchmarkMeta meta ) {
 
-    void cache_set() {
+        BenchmarkInterval current = window.current;
 
-        if ( parent.DISABLED  )
-            return;
+        long seq = window.seqAt( currentTimeMillis );
 
-        long currentTimeMillis = System.currentTimeMillis();
+        long from = groupStart( seq );
+        long to = seq;
 
-        synchronized( MUTEX ) {
-            rolloverWhenNecessary( currentTimeMillis );
+        if ( last ) {
+            from -= bucketsPerInterval;
+            to = from + bucketsPerInterval - 1;
         }
 
-        ++now.cache_sets;
-
-    }
-
-    void doLocalStart( long currentTimeMillis ) {
-
-        if ( Benchmark.DISABLE_LOCAL )
-            return;
+        window.sum( from, to, timestamp( current, from ), currentTimeMillis, meta );
 
-        BenchmarkThreadLocalClosure closure = getClosure();
-        
-        closure.startedTimeMillis = currentTimeMillis;
-        
     }
 
-    void doLocalCompleted( long currentTimeMillis ) {
-
-        if ( Benchmark.DISABLE_LOCAL )
-            return;
-
-        BenchmarkThreadLocalClosure closure = getClosure();
-        
-        closure.completedTimeMillis = System.currentTimeMillis();
-
-        now.duration += closure.completedTimeMillis - closure.startedTimeMillis;
-        
+    /**
+     * The first bucket of the interval the given bucket belongs to.
+     */
+    private long groupStart( long seq ) {
+        return ( seq / bucketsPerInterval ) * bucketsPerInterval;
     }
 
     /**
-     * Get the lexical closure for this benchmark.
+     * Compute the start time of the bucket with the given sequence.
      */
-    BenchmarkThreadLocalClosure getClosure() {
-        return (BenchmarkThreadLocalClosure)threadlocal.get();
-    }
-    
-    // **** metadata ************************************************************
+    long timestamp( BenchmarkInterval current, long seq ) {
 
-    public BenchmarkMeta getLast() {
-        return last;
-    }
+        if ( current.seq < 0 )
+            return -1;
+
+        return current.timestamp - ( current.seq - seq ) * window.getBucketInterval();
 
-    public BenchmarkMeta getNow() {
-        return now;
     }
 
     public String toString() {
 
-        return "now=("  + now.toString() + ") last=(" + last.toString() + ") "
+        return "now=("  + getNow().toString() + ") last=(" + getLast().toString() + ") "
             ;
 
     }
 
 }
-
-/**
- * Threadlocal which hold BenchmarkThreadLocalClosures.
- *
- */
-class BenchmarkThreadLocal extends StrongThreadLocal {
-
-    public Object initialValue() {
-        return new BenchmarkThreadLocalClosure();
-    }
-
-}
-
-/**
- * We keep one threadlocal variable per tracker but we keep the data in a
- * lexical closure so that we don't have to have multiple thread locals each
- * with dedicated objects.
- */
-class BenchmarkThreadLocalClosure {
-
-    /**
-     * The time (in millis) that this benchmark was started.
-     */
-    long startedTimeMillis = 0;
-    long completedTimeMillis = 0;
-    
-}
-
@@ -0,0 +1,1095 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p> Records every event for a benchmark exactly once into a ring of fine
+ * grained buckets.  The 1, 5, and 15 minute trackers are just views over this
+ * ring which sum the buckets they cover when somebody reads them.
+ *
+ * <p> Originally each benchmark had three independent trackers so every
+ * start() did three rollover checks, three increments, and three threadlocal
+ * writes.  With the window an event does one rollover check and one striped
+ * increment no matter how many intervals we expose.  Adding a 60 minute
+ * interval only costs a few more slots in the ring and nothing on the write
+ * side.
+ *
+ * <p> Buckets are numbered with an increasing sequence.  A view covering N
+ * buckets treats the buckets [floor(seq/N)*N, seq] as its "now" interval and
+ * the N buckets before that as its "last" interval.  This gives us the same
+ * tumbling semantics the independent trackers had.  A sliding window (see
+ * Benchmark.getSlidingTracker()) uses the same ring with much narrower buckets
+ * and views which always cover the most recent N buckets instead.
+ *
+ * <p> Only two mutable buckets exist at any time: the active one writers
+ * record into and a spare.  At rollover we swap the spare in, flip the
+ * WriterReaderPhaser to wait out any writer still touching the old bucket, and
+ * then freeze the old bucket into an immutable BucketSnapshot in the ring.
+ * The old bucket is reset and kept as the next spare.  Readers of closed
+ * intervals therefore only ever see immutable snapshots so they can't be torn
+ * by late writers, and recording threads never wait on the flip.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class BenchmarkWindow implements Rollable {
+
+    /**
+     * Lets us swap the active bucket without blocking writers.  This is also
+     * the mutex used to prevent two threads from advancing the ring at the
+     * same time which is only acquired once per bucket.
+     */
+    private WriterReaderPhaser phaser = new WriterReaderPhaser();
+
+    /**
+     * The benchmark hosting this window.
+     */
+    private Benchmark parent = null;
+
+    /**
+     * Width (in millis) of each bucket.
+     */
+    private int bucketInterval = 0;
+
+    /**
+     * The ring of closed buckets.  A slot may still hold a bucket from a
+     * previous lap (or be empty if nothing happened during that bucket) so
+     * readers always verify the sequence number.  Only read or written while
+     * holding the phaser lock.  Allocated at the first rollover since most
+     * benchmarks are created long before they have any history.
+     */
+    private BucketSnapshot[] buckets = null;
+
+    /**
+     * The number of slots in the ring.
+     */
+    private int size = 0;
+
+    /**
+     * The first counter and number of counters in each bucket.  These depend
+     * on the type of benchmark hosting the window.
+     */
+    private int first = BenchmarkInterval.STARTED;
+
+    private int width = BenchmarkInterval.WIDTH;
+
+    static final long NANOS_PER_MILLI = 1000L * 1000L;
+
+    /**
+     * Keep track of duration.
+     */
+    private static BenchmarkThreadLocal threadlocal = new BenchmarkThreadLocal();
+
+    /**
+     * The bucket we're currently accumulating into.
+     */
+    volatile BenchmarkInterval current = BenchmarkInterval.UNOPENED;
+
+    /**
+     * The bucket we'll swap in at the next rollover.  Only touched while
+     * holding the phaser lock.
+     */
+    private BenchmarkInterval spare = null;
+
+    /**
+     * Set once the benchmark replaces this window so that the scheduler can
+     * drop it.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * True if the views on this window slide forward one bucket at a time
+     * instead of tumbling once per interval.
+     */
+    private boolean sliding = false;
+
+    /**
+     * Everything recorded into closed buckets since this window was opened.
+     * Closed buckets are folded in as they're snapshotted so keeping lifetime
+     * totals costs nothing on the write side.  Only touched while holding the
+     * phaser lock and allocated at the first non-empty rollover.
+     */
+    private BenchmarkMeta lifetime = null;
+
+    /**
+     * When (in millis) the first bucket was started.  -1 if never opened.
+     */
+    private long opened = -1;
+
+    /**
+     * The end (in millis) of the last bucket which had any events.  Starts out
+     * as the time the window was created.  Used to find idle benchmarks.
+     */
+    private volatile long lastActive = Benchmark.CLOCK.currentTimeMillis();
+
+    /**
+     * The number of operations between start() and complete() (or begin()
+     * and end()) right now.  Unlike the bucket counters this is never reset
+     * at rollover.
+     *
+     * This is a striped gauge like StripedCounters but the base cell lives
+     * right here since it's all most benchmarks ever need.  While it's
+     * uncontended the CAS hands us the exact new count for the peak.  Once two
+     * threads collide we spread out into inFlightCells and the gauge is the
+     * base plus the stripes.
+     */
+    private volatile long inFlight = 0;
+
+    private volatile StripedCounters inFlightCells = null;
+
+    private static final AtomicLongFieldUpdater<BenchmarkWindow> IN_FLIGHT =
+        AtomicLongFieldUpdater.newUpdater( BenchmarkWindow.class, "inFlight" );
+
+    /**
+     * The views (trackers) which have been created on this window.  These are
+     * notified on rollover.
+     */
+    private volatile BenchmarkTracker[] trackers = EMPTY_TRACKERS;
+
+    /**
+     * The trackers (and their last intervals) which rolled over in the last
+     * advance.  Filled in under the phaser lock and handed to the parent once
+     * it's released.
+     */
+    private List<BenchmarkTracker> rolledTrackers = null;
+
+    private List<BenchmarkMeta> rolledMetas = null;
+
+    private static final BenchmarkTracker[] EMPTY_TRACKERS = new BenchmarkTracker[ 0 ];
+
+    /**
+     * Create a new window with the given bucket width which can serve views up
+     * to maxInterval wide.
+     */
+    public BenchmarkWindow( int bucketInterval, int maxInterval, Benchmark parent ) {
+
+        this.bucketInterval = bucketInterval;
+        this.parent = parent;
+
+        if ( parent != null ) {
+            this.first = parent.getFirstCounter();
+            this.width = parent.getWidth();
+        }
+
+        //we need to keep the 'now' and 'last' intervals for the widest view.
+        this.size = 2 * getBucketsPerInterval( maxInterval );
+
+    }
+
+    /**
+     * Create a new window whose trackers are SlidingBenchmarkTrackers.  The
+     * bucket width is the resolution of the sliding views.
+     */
+    BenchmarkWindow( int bucketInterval, int maxInterval, Benchmark parent, boolean sliding ) {
+
+        this( bucketInterval, maxInterval, parent );
+
+        this.sliding = sliding;
+
+    }
+
+    /**
+     * Width (in millis) of each bucket in the ring.
+     */
+    public int getBucketInterval() {
+        return bucketInterval;
+    }
+
+    /**
+     * The widest interval (in millis) that this window can serve.
+     */
+    public int getMaxInterval() {
+        return ( size / 2 ) * bucketInterval;
+    }
+
+    /**
+     * Get a tracker (view) which rolls over with the given interval.  The
+     * interval is rounded to a whole number of buckets.
+     */
+    public BenchmarkTracker getTracker( int interval ) {
+
+        BenchmarkTracker tracker = findTracker( interval );
+
+        if ( tracker != null )
+            return tracker;
+
+        if ( interval > getMaxInterval() ) {
+            throw new IllegalArgumentException( "Interval " + interval +
+                                                " is wider than this window: " +
+                                                getMaxInterval() );
+        }
+
+        synchronized( phaser ) {
+
+            tracker = findTracker( interval );
+
+            if ( tracker == null ) {
+
+                if ( sliding ) {
+                    tracker = new SlidingBenchmarkTracker( this, interval );
+                } else {
+                    tracker = new BenchmarkTracker( this, interval );
+                }
+
+                //copy on write.  Trackers are only added a few times.
+                BenchmarkTracker[] result = new BenchmarkTracker[ trackers.length + 1 ];
+                System.arraycopy( trackers, 0, result, 0, trackers.length );
+                result[ trackers.length ] = tracker;
+
+                trackers = result;
+
+            }
+
+            return tracker;
+
+        }
+
+    }
+
+    private BenchmarkTracker findTracker( int interval ) {
+
+        BenchmarkTracker[] trackers = this.trackers;
+
+        for ( int i = 0; i < trackers.length; ++i ) {
+
+            if ( trackers[i].getInterval() == interval )
+                return trackers[i];
+
+        }
+
+        return null;
+
+    }
+
+    int getBucketsPerInterval( int interval ) {
+        return Math.max( 1, interval / bucketInterval );
+    }
+
+    Benchmark getParent() {
+        return parent;
+    }
+
+    // **** recording ***********************************************************
+
+    /**
+     * Enter the writer critical section.  Events must be recorded into
+     * 'current' between this and exit().  The RolloverScheduler swaps in a new
+     * bucket when this one expires so recording threads never have to look at
+     * the clock.  The only exception is the very first event which opens the
+     * window.
+     */
+    long enter() {
+
+        //NOTE: this has to happen before we enter the phaser since opening
+        //the window may flip it.
+        if ( current.seq < 0 ) {
+            open();
+        }
+
+        return phaser.writerEnter();
+
+    }
+
+    void exit( long epoch ) {
+        phaser.writerExit( epoch );
+    }
+
+    /**
+     * Open the window by starting the first bucket.
+     */
+    private void open() {
+
+        synchronized( phaser ) {
+
+            //another thread might have beat us to it.
+            if ( current.seq >= 0 )
+                return;
+
+            advance( Benchmark.CLOCK.currentTimeMillis(), true );
+
+        }
+
+    }
+
+    void start() {
+
+        long epoch = enter();
+
+        try {
+
+            BenchmarkInterval bucket = current;
+
+            bucket.increment( BenchmarkInterval.STARTED );
+
+            takeOff( bucket );
+
+        } finally {
+            exit( epoch );
+        }
+
+        doLocalStart();
+
+    }
+
+    long complete() {
+        return complete( false );
+    }
+
+    /**
+     * Record a completion (or a failure) and return its duration in nanos (or
+     * -1 if we don't know when it was started).
+     */
+    long complete( boolean failed ) {
+
+        long epoch = enter();
+
+        try {
+
+            land();
+
+            long duration = doLocalCompleted();
+
+            current.completed( duration, failed );
+
+            return duration;
+
+        } finally {
+            exit( epoch );
+        }
+
+    }
+
+    /**
+     * Record a start and return the current nano time as a token to
+     * be passed to end().  We never return zero so that callers can use zero
+     * to mean "not started".
+     */
+    long begin() {
+
+        long epoch = enter();
+
+        try {
+
+            BenchmarkInterval bucket = current;
+
+            bucket.increment( BenchmarkInterval.STARTED );
+
+            takeOff( bucket );
+
+        } finally {
+            exit( epoch );
+        }
+
+        long token = Benchmark.CLOCK.nanoTime();
+
+        return token == 0 ? 1 : token;
+
+    }
+
+    /**
+     * Record a completion for a token returned from begin() and return its
+     * duration in nanos.
+     */
+    long end( long token ) {
+        return end( token, false );
+    }
+
+    /**
+     * Record a completion (or a failure) for a token returned from begin()
+     * and return its duration in nanos.
+     */
+    long end( long token, boolean failed ) {
+
+        long duration = Benchmark.CLOCK.nanoTime() - token;
+
+        long epoch = enter();
+
+        try {
+
+            current.completed( duration, failed );
+
+            land();
+
+        } finally {
+            exit( epoch );
+        }
+
+        return duration;
+
+    }
+
+    /**
+     * Record a completion (or a failure) whose duration (in nanos) was
+     * already measured elsewhere.  A negative duration records the completion
+     * only.  This keeps no per thread state.
+     */
+    void completed( long nanos, boolean failed ) {
+
+        long epoch = enter();
+
+        try {
+            current.completed( nanos, failed );
+        } finally {
+            exit( epoch );
+        }
+
+    }
+
+    /**
+     * Record a whole operation (start, completion, and duration in nanos) in
+     * one step.  Used by Timer.update().
+     */
+    void update( long nanos ) {
+
+        long epoch = enter();
+
+        try {
+
+            BenchmarkInterval bucket = current;
+
+            bucket.increment( BenchmarkInterval.STARTED );
+            bucket.completed( nanos, false );
+
+        } finally {
+            exit( epoch );
+        }
+
+    }
+
+    void cache_hit() {
+        increment( BenchmarkInterval.CACHE_HITS );
+    }
+
+    void cache_miss() {
+        increment( BenchmarkInterval.CACHE_MISSES );
+    }
+
+    void cache_set() {
+        increment( BenchmarkInterval.CACHE_SETS );
+    }
+
+    void increment( int counter ) {
+        add( counter, 1 );
+    }
+
+    /**
+     * Add the given value to a counter in the active bucket.  This is the
+     * whole hot path for a Counter.
+     */
+    void add( int counter, long value ) {
+
+        //e.g. cache_hit() on a Counter.
+        if ( counter < first || counter - first >= width ) {
+
+            throw new UnsupportedOperationException( parent.getClass().getName() +
+                                                     " doesn't keep counter " + counter );
+
+        }
+
+        long epoch = enter();
+
+        try {
+            current.add( counter, value );
+        } finally {
+            exit( epoch );
+        }
+
+    }
+
+    /**
+     * Record a value (a size, an age, etc) into the active bucket.
+     */
+    void record( long value ) {
+
+        long epoch = enter();
+
+        try {
+            current.value( value );
+        } finally {
+            exit( epoch );
+        }
+
+    }
+
+    /**
+     * Record a start and a completion together.  Used for events which don't
+     * have a duration so there's no reason to touch the threadlocal.
+     */
+    void startAndComplete() {
+
+        long epoch = enter();
+
+        try {
+
+            BenchmarkInterval bucket = current;
+
+            bucket.increment( BenchmarkInterval.STARTED );
+            bucket.increment( BenchmarkInterval.COMPLETED );
+
+        } finally {
+            exit( epoch );
+        }
+
+    }
+
+    /**
+     * Count an operation as in flight and raise the bucket's peak if this is
+     * the most concurrent it's been.
+     */
+    private void takeOff( BenchmarkInterval bucket ) {
+
+        StripedCounters cells = inFlightCells;
+
+        if ( cells == null ) {
+
+            long current = inFlight;
+
+            if ( IN_FLIGHT.compareAndSet( this, current, current + 1 ) ) {
+                bucket.peak( current + 1 );
+                return;
+            }
+
+            cells = inflateInFlight();
+
+        }
+
+        cells.increment( 0 );
+
+        //one read per stripe.
+        bucket.peak( inFlight + cells.sum( 0 ) );
+
+    }
+
+    private void land() {
+
+        StripedCounters cells = inFlightCells;
+
+        if ( cells == null ) {
+
+            long current = inFlight;
+
+            if ( IN_FLIGHT.compareAndSet( this, current, current - 1 ) )
+                return;
+
+            cells = inflateInFlight();
+
+        }
+
+        cells.add( 0, -1 );
+
+    }
+
+    private StripedCounters inflateInFlight() {
+
+        synchronized( this ) {
+
+            if ( inFlightCells == null )
+                inFlightCells = new StripedCounters( 1 );
+
+            return inFlightCells;
+
+        }
+
+    }
+
+    /**
+     * Carry over the operations still in flight on a retired window so they
+     * balance when they end on this one.  Called before we're published.
+     */
+    void inherit( BenchmarkWindow retired ) {
+        inFlight = retired.getInFlight();
+    }
+
+    /**
+     * The number of operations in flight right now.
+     */
+    long getInFlight() {
+
+        StripedCounters cells = inFlightCells;
+
+        return inFlight + ( cells == null ? 0 : cells.sum( 0 ) );
+
+    }
+
+    void doLocalStart() {
+
+        if ( Benchmark.DISABLE_LOCAL )
+            return;
+
+        getClosure().push( this, Benchmark.CLOCK.nanoTime() );
+
+    }
+
+    /**
+     * Pop the start time for this thread and return the duration in nanos (or
+     * -1 if we don't know when it was started).
+     */
+    long doLocalCompleted() {
+
+        if ( Benchmark.DISABLE_LOCAL )
+            return -1;
+
+        long started = getClosure().pop( this );
+
+        //complete() without a start() of ours on this thread.
+        if ( started == BenchmarkThreadLocalClosure.NOT_STARTED )
+            return -1;
+
+        return Benchmark.CLOCK.nanoTime() - started;
+
+    }
+
+    /**
+     * Get the lexical closure for this benchmark.
+     */
+    BenchmarkThreadLocalClosure getClosure() {
+        return (BenchmarkThreadLocalClosure)threadlocal.get();
+    }
+
+    /**
+     * Advance the ring if the current bucket has expired.
+     */
+    BenchmarkWindow advanceWhenNecessary( long currentTimeMillis ) {
+
+        BenchmarkInterval bucket = current;
+
+        if ( bucket.seq >= 0 && currentTimeMillis - bucket.timestamp >= bucketInterval ) {
+            advance( currentTimeMillis, false );
+        }
+
+        return this;
+
+    }
+
+    public void rolloverWhenNecessary( long currentTimeMillis ) {
+        advanceWhenNecessary( currentTimeMillis );
+    }
+
+    /**
+     * The time (in millis) when the current bucket expires.
+     */
+    public long nextRollover() {
+        return current.timestamp + bucketInterval;
+    }
+
+    /**
+     * Stop rolling over this window.  Called when a benchmark is cleared and
+     * the window is replaced.
+     */
+    void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Move to a new bucket.  When forced we start a new bucket right now
+     * regardless of whether the current one has expired.  Otherwise we skip
+     * over any buckets that passed without events so that idle periods are
+     * counted as empty buckets.
+     */
+    BenchmarkInterval advance( long currentTimeMillis, boolean force ) {
+
+        BenchmarkInterval next = null;
+
+        List<BenchmarkTracker> rolledTrackers = null;
+        List<BenchmarkMeta> rolledMetas = null;
+
+        synchronized( phaser ) {
+
+            next = doAdvance( currentTimeMillis, force );
+
+            rolledTrackers = this.rolledTrackers;
+            rolledMetas = this.rolledMetas;
+
+            this.rolledTrackers = null;
+            this.rolledMetas = null;
+
+        }
+
+        //log and broadcast outside the lock so a slow handler or listener
+        //doesn't hold up readers and the next rollover.
+        if ( rolledTrackers != null ) {
+
+            for ( int i = 0; i < rolledTrackers.size(); ++i ) {
+                parent.onRollover( rolledTrackers.get( i ), rolledMetas.get( i ) );
+            }
+
+        }
+
+        return next;
+
+    }
+
+    /**
+     * Do the work of advance() with the phaser lock held.
+     */
+    private BenchmarkInterval doAdvance( long currentTimeMillis, boolean force ) {
+
+        BenchmarkInterval previous = current;
+
+        long elapsed = currentTimeMillis - previous.timestamp;
+
+        //double check idiom.  Another thread might have advanced while we
+        //were waiting on the lock.
+        if ( force == false && elapsed < bucketInterval )
+            return previous;
+
+        long seq = 0;
+        long timestamp = currentTimeMillis;
+
+        if ( previous.seq < 0 ) {
+            seq = 0;
+        } else if ( force ) {
+            seq = previous.seq + 1;
+        } else {
+
+            long skipped = elapsed / bucketInterval;
+
+            seq = previous.seq + skipped;
+            timestamp = previous.timestamp + skipped * bucketInterval;
+
+        }
+
+        BenchmarkInterval next = spare;
+
+        if ( next == null ) {
+            next = new BenchmarkInterval( first, width, seq, timestamp );
+        } else {
+            next.reuse( seq, timestamp );
+        }
+
+        //operations still in flight are part of the new bucket too.
+        next.peak( getInFlight() );
+
+        next.sampleMask = sampleMask( previous );
+
+        spare = null;
+        current = next;
+
+        if ( previous.seq < 0 ) {
+            //the first event so we need to start rolling over.
+            opened = timestamp;
+            RolloverScheduler.schedule( this );
+            return next;
+        }
+
+        //wait for any writer still recording into the previous bucket.
+        //Writers never wait on us.
+        phaser.flipPhase();
+
+        if ( previous.isEmpty() == false ) {
+
+            lastActive = previous.timestamp + bucketInterval;
+
+            if ( buckets == null )
+                buckets = new BucketSnapshot[ size ];
+
+            BucketSnapshot snapshot = new BucketSnapshot( previous );
+
+            buckets[ slot( previous.seq ) ] = snapshot;
+
+            //sliding windows are created on demand so their totals
+            //wouldn't be the lifetime of anything.
+            if ( sliding == false ) {
+
+                if ( lifetime == null )
+                    lifetime = new BenchmarkMeta();
+
+                snapshot.addTo( lifetime );
+
+            }
+
+        }
+
+        //recycle the old bucket.  It's reset when it's swapped back in at
+        //the next rollover.
+        spare = previous;
+
+        fireRollover( previous.seq, next.seq );
+
+        return next;
+
+    }
+
+    /**
+     * Decide how many completions to sample in the next bucket.  With a
+     * sample target we pick the largest power of two N so that 1 in N of the
+     * completions from the previous bucket would still have hit the target.
+     * Otherwise the category can give us a fixed rate which the benchmark
+     * caches as a mask.
+     */
+    private int sampleMask( BenchmarkInterval previous ) {
+
+        int target = parent.sampleTarget;
+
+        //cached when the benchmark was categorized.
+        if ( target <= 0 )
+            return parent.categorySampleMask;
+
+        long every = 1;
+
+        if ( previous.seq >= 0 ) {
+
+            long perBucket = Math.max( 1, (long)target * bucketInterval / Benchmark.INTERVAL_1 );
+
+            every = previous.sum( BenchmarkInterval.COMPLETED ) / perBucket;
+
+        }
+
+        if ( every <= 1 )
+            return 0;
+
+        return (int)Long.highestOneBit( Math.min( every, 1 << 30 ) ) - 1;
+
+    }
+
+    /**
+     * Remember which trackers rolled over so advance() can tell the parent
+     * once the lock is released.  The last interval is read here while the
+     * ring can't move.
+     */
+    private void fireRollover( long previousSeq, long seq ) {
+
+        for ( BenchmarkTracker tracker : trackers ) {
+
+            int n = tracker.getBucketsPerInterval();
+
+            if ( previousSeq / n != seq / n ) {
+
+                if ( rolledTrackers == null ) {
+                    rolledTrackers = new ArrayList();
+                    rolledMetas = new ArrayList();
+                }
+
+                rolledTrackers.add( tracker );
+                rolledMetas.add( tracker.getLast() );
+
+            }
+
+        }
+
+    }
+
+    // **** reading *************************************************************
+
+    /**
+     * Sum the buckets in the [from, to] sequence range into a BenchmarkMeta.
+     * Closed buckets come from their immutable snapshots.  If the range
+     * includes the active bucket we add in its live counts.
+     *
+     * We hold the phaser lock so we never see the ring in the middle of a
+     * rollover (after the swap but before the old bucket is snapshotted).
+     * Only readers and the rollover take this lock.  Writers never do.
+     */
+    BenchmarkMeta sum( long from, long to, long timestamp ) {
+
+        BenchmarkMeta meta = new BenchmarkMeta();
+
+        synchronized( phaser ) {
+            sum( from, to, timestamp, Benchmark.CLOCK.currentTimeMillis(), meta );
+        }
+
+        return meta;
+
+    }
+
+    /**
+     * Sum the buckets in the [from, to] sequence range into the given (empty)
+     * meta.  The caller must hold the phaser lock.
+     */
+    void sum( long from, long to, long timestamp, long currentTimeMillis, BenchmarkMeta meta ) {
+
+        meta.timestamp = timestamp;
+        meta.inFlight = getInFlight();
+
+        if ( timestamp >= 0 ) {
+
+            //the part of the range we've been open for and that has
+            //already happened.
+            long begin = Math.max( timestamp, opened );
+            long end = timestamp + ( to - from + 1 ) * bucketInterval;
+
+            meta.elapsed = Math.max( 0, Math.min( end, currentTimeMillis ) - begin );
+
+        }
+
+        BenchmarkInterval active = current;
+
+        for ( long seq = Math.max( 0, from ); seq <= to; ++seq ) {
+
+            if ( seq == active.seq ) {
+                active.addTo( meta );
+                continue;
+            }
+
+            if ( buckets == null )
+                continue;
+
+            BucketSnapshot bucket = buckets[ slot( seq ) ];
+
+            //this slot is from a previous lap (or nothing happened).
+            if ( bucket == null || bucket.seq != seq )
+                continue;
+
+            bucket.addTo( meta );
+
+        }
+
+        meta.duration = meta.durationNanos / NANOS_PER_MILLI;
+
+    }
+
+    /**
+     * The sequence of the bucket the given time falls in.  This is ahead of
+     * the active bucket when it has expired but hasn't been rolled over yet.
+     * -1 if the window was never opened.
+     */
+    long seqAt( long currentTimeMillis ) {
+
+        BenchmarkInterval active = current;
+
+        if ( active.seq < 0 )
+            return -1;
+
+        return active.seq + Math.max( 0, ( currentTimeMillis - active.timestamp ) / bucketInterval );
+
+    }
+
+    /**
+     * Copy the last and current interval of each of the given trackers and
+     * the lifetime totals into the given snapshot.  Everything is read under
+     * one lock so the periods agree with each other.  This never rolls over
+     * and never blocks writers.
+     */
+    void capture( long currentTimeMillis,
+                  BenchmarkTracker[] trackers,
+                  BenchmarkMeta meta,
+                  BenchmarkSnapshot snapshot,
+                  int index ) {
+
+        synchronized( phaser ) {
+
+            for ( int i = 0; i < trackers.length; ++i ) {
+
+                meta.clear();
+                trackers[i].read( currentTimeMillis, true, meta );
+                snapshot.set( index, BenchmarkSnapshot.LAST + i, meta );
+
+                meta.clear();
+                trackers[i].read( currentTimeMillis, false, meta );
+                snapshot.set( index, BenchmarkSnapshot.NOW + i, meta );
+
+            }
+
+            meta.clear();
+            lifetime( currentTimeMillis, meta );
+
+            LifetimeCheckpoint.restore( parent.getName(), meta );
+
+            snapshot.set( index, BenchmarkSnapshot.LIFETIME, meta );
+
+        }
+
+    }
+
+    /**
+     * True if nothing has happened in this window for the given number of
+     * millis.
+     */
+    boolean isIdle( long currentTimeMillis, long idle ) {
+
+        if ( getInFlight() != 0 )
+            return false;
+
+        BenchmarkInterval active = current;
+
+        if ( active.seq >= 0 && active.isEmpty() == false )
+            return false;
+
+        return currentTimeMillis - lastActive >= idle;
+
+    }
+
+    /**
+     * Add the given totals to the lifetime of this window.  Used to keep the
+     * totals of an evicted child.
+     */
+    void fold( BenchmarkMeta meta ) {
+
+        synchronized( phaser ) {
+
+            if ( lifetime == null )
+                lifetime = new BenchmarkMeta();
+
+            lifetime.add( meta );
+
+        }
+
+    }
+
+    /**
+     * Sum everything recorded into this window since it was opened.  This is
+     * the lifetime totals plus the live counts of the active bucket.
+     */
+    BenchmarkMeta lifetime() {
+
+        BenchmarkMeta meta = new BenchmarkMeta();
+
+        synchronized( phaser ) {
+            lifetime( Benchmark.CLOCK.currentTimeMillis(), meta );
+        }
+
+        return meta;
+
+    }
+
+    /**
+     * Sum the lifetime totals into the given (empty) meta.  The caller must
+     * hold the phaser lock.
+     */
+    private void lifetime( long currentTimeMillis, BenchmarkMeta meta ) {
+
+        BenchmarkInterval active = current;
+
+        meta.inFlight = getInFlight();
+        meta.timestamp = opened;
+
+        if ( opened >= 0 )
+            meta.elapsed = currentTimeMillis - opened;
+
+        if ( lifetime != null )
+            meta.add( lifetime );
+
+        if ( active.seq >= 0 )
+            active.addTo( meta );
+
+        meta.duration = meta.durationNanos / NANOS_PER_MILLI;
+
+    }
+
+    private int slot( long seq ) {
+        return (int)( seq % size );
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * Immutable copy of a closed bucket.  Much smaller than a live bucket since
+ * it doesn't need any stripes.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+class BucketSnapshot {
+
+    final long seq;
+
+    final long timestamp;
+
+    /**
+     * The first counter in values.  See BenchmarkInterval.first.
+     */
+    final int first;
+
+    final long[] values;
+
+    final long maxDuration;
+
+    final long peakInFlight;
+
+    final int sampleMask;
+
+    /**
+     * Null if the bucket didn't keep durations.
+     */
+    final Histogram histogram;
+
+    /**
+     * Frozen copy of the bucket's values or null if none were recorded.
+     */
+    final ValueStats valueStats;
+
+    BucketSnapshot( BenchmarkInterval bucket ) {
+
+        this.seq = bucket.seq;
+        this.timestamp = bucket.timestamp;
+        this.maxDuration = bucket.maxDuration;
+        this.peakInFlight = bucket.peakInFlight;
+        this.sampleMask = bucket.sampleMask;
+        this.first = bucket.first;
+        this.values = new long[ bucket.counters.getWidth() ];
+
+        for ( int i = 0; i < values.length; ++i ) {
+            values[i] = bucket.counters.sum( i );
+        }
+
+        if ( bucket.histogram == null ) {
+            this.histogram = null;
+        } else {
+            this.histogram = new Histogram();
+            this.histogram.add( bucket.histogram );
+        }
+
+        ValueStats valueStats = bucket.valueStats;
+
+        if ( valueStats == null || valueStats.isEmpty() ) {
+            this.valueStats = null;
+        } else {
+            this.valueStats = new ValueStats( valueStats );
+        }
+
+    }
+
+    void addTo( BenchmarkMeta meta ) {
+
+        meta.started      += value( BenchmarkInterval.STARTED );
+        meta.completed    += value( BenchmarkInterval.COMPLETED );
+        meta.durationNanos += BenchmarkInterval.estimate( value( BenchmarkInterval.DURATION ),
+                                                          value( BenchmarkInterval.COMPLETED ),
+                                                          value( BenchmarkInterval.SAMPLED ),
+                                                          sampleMask );
+        meta.sampled      += value( BenchmarkInterval.SAMPLED );
+        meta.failed       += value( BenchmarkInterval.FAILED );
+        meta.failedDurationNanos += value( BenchmarkInterval.FAILED_DURATION );
+        meta.cache_hits   += (int)value( BenchmarkInterval.CACHE_HITS );
+        meta.cache_misses += (int)value( BenchmarkInterval.CACHE_MISSES );
+        meta.cache_sets   += (int)value( BenchmarkInterval.CACHE_SETS );
+        meta.cache_evictions += (int)value( BenchmarkInterval.CACHE_EVICTIONS );
+
+        meta.maxDurationNanos = Math.max( meta.maxDurationNanos, maxDuration );
+        meta.peakInFlight = Math.max( meta.peakInFlight, peakInFlight );
+
+        if ( histogram != null )
+            meta.histogram.add( histogram );
+
+        if ( valueStats != null )
+            valueStats.addTo( meta );
+
+    }
+
+    private long value( int counter ) {
+
+        int index = counter - first;
+
+        return index >= 0 && index < values.length ? values[ index ] : 0;
+
+    }
+
+}
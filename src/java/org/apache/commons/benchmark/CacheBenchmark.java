@@ -46,7 +46,9 @@ import java.util.*;
  * 
  * </code>
  * 
- * <p>
+ * <p> Named cache benchmarks which don't need the caller should use
+ * CacheMeter instead.  It only keeps the cache counters and also tracks
+ * evictions.
  * 
  * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
  * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
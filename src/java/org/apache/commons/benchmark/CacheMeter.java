@@ -0,0 +1,103 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> A benchmark for caches.  Each hit(), miss(), set(), and evict() is a
+ * single striped add into the current bucket.  The trackers report the
+ * counts along with the cache efficiency (hits / (hits + misses)).
+ *
+ * <code>
+ *
+ * static CacheMeter cache = CacheMeter.getCacheMeter( "org.apache.Foo.cache" );
+ *
+ * Object value = map.get( key );
+ *
+ * if ( value != null ) {
+ *     cache.hit();
+ * } else {
+ *     cache.miss();
+ * }
+ *
+ * </code>
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class CacheMeter extends Benchmark {
+
+    public CacheMeter( String name ) {
+        super( name );
+    }
+
+    public void hit() {
+        count( BenchmarkInterval.CACHE_HITS );
+    }
+
+    public void miss() {
+        count( BenchmarkInterval.CACHE_MISSES );
+    }
+
+    public void set() {
+        count( BenchmarkInterval.CACHE_SETS );
+    }
+
+    public void evict() {
+        count( BenchmarkInterval.CACHE_EVICTIONS );
+    }
+
+    private void count( int counter ) {
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        window.increment( counter );
+
+        slide( counter );
+
+    }
+
+    /**
+     * Buckets only need the cache counters.
+     */
+    int getWidth() {
+        return BenchmarkInterval.CACHE_EVICTIONS - BenchmarkInterval.CACHE_HITS + 1;
+    }
+
+    int getFirstCounter() {
+        return BenchmarkInterval.CACHE_HITS;
+    }
+
+    /**
+     * Factory method for obtaining a cache meter by name.
+     */
+    public static CacheMeter getCacheMeter( String name ) {
+
+        Benchmark benchmark = benchmarks.get( name );
+
+        if ( benchmark == null ) {
+            benchmark = registerBenchmark( name, new CacheMeter( name ) );
+        }
+
+        return (CacheMeter)checkType( name, benchmark, CacheMeter.class );
+
+    }
+
+}
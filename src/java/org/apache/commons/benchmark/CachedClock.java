@@ -0,0 +1,103 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> Clock whose wall time is cached in a volatile field and updated by a
+ * daemon ticker thread every 'resolution' millis.  Reading it is just a
+ * volatile read instead of a call into the OS.  Durations still use
+ * System.nanoTime() since they need the full resolution.
+ *
+ * <p> The ticker is started the first time the wall time is read.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class CachedClock extends BenchmarkClock {
+
+    /**
+     * Default resolution (in millis).  This matches RolloverScheduler.TICK so
+     * the scheduler never sees the same time twice in a row.
+     */
+    public static final long DEFAULT_RESOLUTION = 10;
+
+    private long resolution = DEFAULT_RESOLUTION;
+
+    private volatile long currentTimeMillis = 0;
+
+    private volatile Thread ticker = null;
+
+    public CachedClock() {
+        this( DEFAULT_RESOLUTION );
+    }
+
+    public CachedClock( long resolution ) {
+        this.resolution = resolution;
+    }
+
+    public long getResolution() {
+        return resolution;
+    }
+
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    public long currentTimeMillis() {
+
+        if ( ticker == null )
+            startTicker();
+
+        return currentTimeMillis;
+
+    }
+
+    private synchronized void startTicker() {
+
+        if ( ticker != null )
+            return;
+
+        currentTimeMillis = System.currentTimeMillis();
+
+        Thread t = new Thread( "benchmark-clock" ) {
+
+                public void run() {
+
+                    while ( true ) {
+
+                        try {
+                            Thread.sleep( resolution );
+                        } catch ( InterruptedException e ) {
+                            return;
+                        }
+
+                        currentTimeMillis = System.currentTimeMillis();
+
+                    }
+
+                }
+
+            };
+
+        t.setDaemon( true );
+        t.start();
+
+        ticker = t;
+
+    }
+
+}
@@ -19,6 +19,8 @@ package org.apache.commons.benchmark;
 import org.apache.commons.benchmark.proxy.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  *
@@ -74,6 +76,15 @@ public class CallerBenchmark extends Benchmark {
      */
     private Object parent = null;
     
+    /**
+     * Children created with child() keyed by their suffix.  Created on the
+     * first call to child() since most benchmarks never have any.
+     */
+    private volatile ConcurrentHashMap<String,CallerBenchmark> children = null;
+
+    private static final AtomicReferenceFieldUpdater<CallerBenchmark,ConcurrentHashMap> CHILDREN =
+        AtomicReferenceFieldUpdater.newUpdater( CallerBenchmark.class, ConcurrentHashMap.class, "children" );
+    
     public CallerBenchmark( Object parent ) {
 
         super( true );
@@ -106,21 +117,60 @@ public class CallerBenchmark extends Benchmark {
         return new CallerInfo( lineNumber, method, classname );
     }
 
+    /**
+     * Create a new child benchmark based on this given benchmark name as a
+     * prefix and the target name as a suffix.  Calls on the child are also
+     * made on this benchmark.
+     *
+     * <p> This is usually called in request loops so once a child exists it's
+     * found in a table on this benchmark keyed by the suffix.  That's a
+     * lock free lookup with no string concatenation and no global lock but
+     * it's still a hash lookup so callers in tight loops should keep the
+     * child in a local.  Only the first call for a given suffix touches the
+     * global registry.
+     */
     public CallerBenchmark child( String name ) {
-        return child( name, false );
+
+        ConcurrentHashMap<String,CallerBenchmark> children = this.children;
+
+        if ( children != null ) {
+
+            CallerBenchmark child = children.get( name );
+
+            if ( child != null )
+                return child;
+
+        }
+
+        return newChild( name );
+
     }
 
     /**
-     * Create a new child benchmark based on this given benchmark name as a
-     * prefix and the target name as a suffix.  If
-     * <code>sendCallsToParent</code> is true we will also call methods on the
-     * parent benchmark when necessary.
+     * @deprecated Children always send their calls to the parent.  The child
+     * is shared with every other caller of child() with the same name so it
+     * can't do both.  The flag is ignored; use child( String ).
      */
     public CallerBenchmark child( String name,
                                   boolean sendCallsToParent ) {
+        return child( name );
+    }
+
+    /**
+     * Find or create the child in the global registry and add it to our child
+     * table.
+     */
+    private CallerBenchmark newChild( String name ) {
 
         beforeMetric();
 
+        ConcurrentHashMap<String,CallerBenchmark> children = this.children;
+
+        if ( children == null ) {
+            CHILDREN.compareAndSet( this, null, new ConcurrentHashMap() );
+            children = this.children;
+        }
+
         StringBuilder buff = new StringBuilder( 128 );
 
         buff.append( super.getName() )
@@ -130,22 +180,63 @@ public class CallerBenchmark extends Benchmark {
         
         String key = buff.toString();
 
-        //we have to synchronize on this hashmap I'm afraid.  I could use a
-        //ConcurrentHashMap but I'm not sure of the performance advantage here
-        //and if it is worth switching. 
+        //one bad call site with an ID in the name shouldn't fill the heap.
+        //Past the limit new children just record into us.  They aren't added
+        //to our table either or it would grow with every name instead.
+        if ( isRegistryFull() && benchmarks.containsKey( key ) == false ) {
+            overflowed.incrementAndGet();
+            return this;
+        }
+
+        CallerBenchmark child = null;
+
+        //another CallerBenchmark with the same name may have already created
+        //this child.  The registry can be replaced with a plain map (the tests
+        //do this) so we still have to synchronize here but this only happens
+        //once per child.
         synchronized( benchmarks ) {
             
-            CallerBenchmark child = (CallerBenchmark)benchmarks.get( key );
+            child = (CallerBenchmark)benchmarks.get( key );
 
             if ( child == null ) {
                 child = new CallerBenchmark( key );
                 child.sink = this;
-                registerBenchmark( key, child );
+                child = (CallerBenchmark)registerBenchmark( key, child );
             }
 
-            return child;
-
         }
+
+        CallerBenchmark existing = children.putIfAbsent( name, child );
+
+        return existing != null ? existing : child;
+        
+    }
+
+    /**
+     * Fold into the benchmark we were created from (not just the nearest
+     * name) when evicted.
+     */
+    Benchmark getParent() {
+        return sink != null ? sink : super.getParent();
+    }
+
+    /**
+     * Drop ourselves from our parent's child table so it doesn't keep us
+     * around.
+     */
+    void evicted() {
+
+        if ( sink == null )
+            return;
+
+        ConcurrentHashMap<String,CallerBenchmark> children = sink.children;
+
+        if ( children == null )
+            return;
+
+        String name = getName().substring( sink.getName().length() + 1 );
+
+        children.remove( name, this );
         
     }
 
@@ -154,6 +245,9 @@ public class CallerBenchmark extends Benchmark {
      */
     public void start() {
 
+        if ( DISABLED )
+            return;
+
         if ( sink != null ) sink.start(); 
 
         super.start();
@@ -165,10 +259,105 @@ public class CallerBenchmark extends Benchmark {
      */
     public void complete() {
 
+        if ( DISABLED )
+            return;
+
         if ( sink != null ) sink.complete(); 
 
         super.complete();
 
     }
 
+    /**
+     * @see Benchmark.increment
+     */
+    public void increment() {
+
+        if ( DISABLED )
+            return;
+
+        if ( sink != null ) sink.increment();
+
+        super.increment();
+
+    }
+
+    /**
+     * @see Benchmark.record
+     */
+    public void record( long value ) {
+
+        if ( DISABLED )
+            return;
+
+        if ( sink != null ) sink.record( value );
+
+        super.record( value );
+
+    }
+
+    /**
+     * @see Benchmark.fail
+     */
+    public void fail( Throwable t ) {
+
+        if ( DISABLED )
+            return;
+
+        if ( sink != null ) sink.fail( t );
+
+        super.fail( t );
+
+    }
+
+    /**
+     * @see Benchmark.fail
+     */
+    public void fail( long token, Throwable t ) {
+
+        if ( DISABLED )
+            return;
+
+        //see begin()
+        if ( token != 0 && sink != null ) sink.fail( token, t );
+
+        super.fail( token, t );
+
+    }
+
+    /**
+     * @see Benchmark.begin
+     */
+    public long begin() {
+
+        if ( DISABLED )
+            return 0;
+
+        long token = super.begin();
+
+        //a disabled child hands back 0 which end() ignores so the sink
+        //mustn't start either or it would never land.  Otherwise the sink is
+        //ended with our token.  Tokens are just start times so the durations
+        //agree.
+        if ( token != 0 && sink != null ) sink.begin();
+
+        return token;
+
+    }
+
+    /**
+     * @see Benchmark.end
+     */
+    public void end( long token ) {
+
+        if ( DISABLED )
+            return;
+
+        //see begin()
+        if ( token != 0 && sink != null ) sink.end( token );
+
+        super.end( token );
+
+    }
+
 }
\ No newline at end of file
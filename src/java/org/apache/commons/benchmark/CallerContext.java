@@ -27,7 +27,11 @@ public class CallerContext {
 
     private Object MUTEX = new Object();
     
-    private boolean initialized = false;
+    /**
+     * Volatile so that init() doesn't have to acquire MUTEX once we've found
+     * the caller.
+     */
+    private volatile boolean initialized = false;
     public int lineNumber;
     public String method;
     public String classname;
@@ -36,6 +40,9 @@ public class CallerContext {
 
     public CallerContext init() {
 
+        if ( initialized )
+            return this;
+
         synchronized( MUTEX ) {
         
             if ( ! initialized ) {
@@ -45,6 +52,11 @@ public class CallerContext {
                 lineNumber = caller.getLineNumber();
                 method = caller.getMethodName();
                 classname = caller.getClassName();
+
+                //NOTE: this was never set before so every init() walked the
+                //stack again.  It has to be the last write since it's what
+                //publishes the fields above.
+                initialized = true;
                 
             }
 
@@ -22,6 +22,8 @@ public class CallerInfo {
     public String method;
     public String classname;
 
+    private String name = null;
+
     public CallerInfo( int lineNumber, String method, String classname ) {
         this.lineNumber = lineNumber;
         this.method = method;
@@ -40,6 +42,24 @@ public class CallerInfo {
         return classname;
     }
 
+    /**
+     * The classname and method of this caller.  This is used as the name of
+     * full caller benchmarks so it's only built once.
+     */
+    public String getName() {
+
+        //racy but it's only a cache of an immutable string.
+        String name = this.name;
+
+        if ( name == null ) {
+            name = classname + "." + method;
+            this.name = name;
+        }
+
+        return name;
+
+    }
+
     /**
      * Pretty print this caller info so that we can use it in other tasks (MySQL
      * JDBC logging for example).
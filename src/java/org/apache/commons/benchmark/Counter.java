@@ -0,0 +1,114 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> A benchmark which only counts.  Each inc() is a single striped add into
+ * the current bucket.  There's no duration, no histogram, and no threadlocal
+ * so this is the cheapest way to track things like the number of times a
+ * queue was reloaded.
+ *
+ * <code>
+ *
+ * static Counter reloads = Counter.getCounter( "org.apache.Foo.reloads" );
+ *
+ * reloads.inc();
+ *
+ * </code>
+ *
+ * <p> Counts show up as the completed value of the trackers so counters are
+ * exported the same way as every other benchmark.  start() and complete()
+ * still work but they take the generic (slower) path.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class Counter extends Benchmark {
+
+    public Counter( String name ) {
+        super( name );
+    }
+
+    /**
+     * Count one event.
+     */
+    public void inc() {
+        add( 1 );
+    }
+
+    /**
+     * Count the given number of events.
+     */
+    public void add( long value ) {
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        window.add( BenchmarkInterval.COMPLETED, value );
+
+        BenchmarkWindow sliding = this.sliding;
+
+        if ( sliding != null )
+            sliding.add( BenchmarkInterval.COMPLETED, value );
+
+        Meter meter = this.meter;
+
+        if ( meter != null )
+            meter.mark( value );
+
+    }
+
+    /**
+     * Same as inc().
+     */
+    public void increment() {
+        add( 1 );
+    }
+
+    /**
+     * The total count over the life of this counter.
+     */
+    public long getCount() {
+        return getLifetime().getCompleted();
+    }
+
+    /**
+     * Buckets only need the started and completed counters.
+     */
+    int getWidth() {
+        return BenchmarkInterval.COMPLETED + 1;
+    }
+
+    /**
+     * Factory method for obtaining a counter by name.
+     */
+    public static Counter getCounter( String name ) {
+
+        Benchmark benchmark = benchmarks.get( name );
+
+        if ( benchmark == null ) {
+            benchmark = registerBenchmark( name, new Counter( name ) );
+        }
+
+        return (Counter)checkType( name, benchmark, Counter.class );
+
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p> Log-linear histogram (the same layout HdrHistogram uses) which lets us
+ * report percentiles without keeping the raw samples.
+ *
+ * <p> Values are grouped by magnitude (power of two) and each magnitude is
+ * split into SUB_BUCKETS linear buckets.  With 16 sub buckets every value is
+ * within 6.25% of the value we report for it no matter how large it is.  8
+ * (12.5%) turned out to be too coarse to alert on p99 and p999.
+ * Values below SUB_BUCKETS are recorded exactly and values above MAX_VALUE
+ * (about 78 hours worth of nanos) are clamped.
+ *
+ * <p> Memory is bounded but allocated lazily.  Nothing is allocated until the
+ * first value is recorded and then only one row of SUB_BUCKETS counters per
+ * magnitude between the smallest and largest magnitude we've seen.  Durations
+ * for a given benchmark tend to fall into a handful of magnitudes so a
+ * histogram is usually a couple hundred bytes.  This matters since every
+ * bucket of every benchmark has one.  Recording never takes a lock except the
+ * first time a magnitude is seen.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class Histogram {
+
+    static final int SUB_BITS = 4;
+
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    static final int SUB_MASK = SUB_BUCKETS - 1;
+
+    /**
+     * The largest value we can tell apart from larger ones.
+     */
+    public static final long MAX_VALUE = ( 1L << 48 ) - 1;
+
+    /**
+     * Row 0 holds the values below SUB_BUCKETS exactly.  Row N holds
+     * magnitude N + SUB_BITS - 1.
+     */
+    static final int ROWS = 48 - SUB_BITS + 1;
+
+    /**
+     * The rows of counters we've allocated so far.  Null until the first value
+     * is recorded.  When a value falls outside these rows we copy them into a
+     * wider Rows.  The AtomicLongArrays are shared between the old and the new
+     * Rows so no counts are lost by a writer still using the old one.
+     */
+    private volatile Rows rows = null;
+
+    /**
+     * Record the given value.  Negative values are recorded as zero.
+     */
+    public void record( long value ) {
+        record( value, 1 );
+    }
+
+    /**
+     * Record the given value count times.
+     */
+    public void record( long value, long count ) {
+
+        int index = index( value );
+
+        row( index >>> SUB_BITS ).addAndGet( index & SUB_MASK, count );
+
+    }
+
+    /**
+     * The total number of values recorded.
+     */
+    public long getCount() {
+
+        Rows rows = this.rows;
+
+        if ( rows == null )
+            return 0;
+
+        long result = 0;
+
+        for ( int i = 0; i < rows.rows.length; ++i ) {
+
+            AtomicLongArray row = rows.rows[i];
+
+            if ( row == null )
+                continue;
+
+            for ( int j = 0; j < SUB_BUCKETS; ++j ) {
+                result += row.get( j );
+            }
+
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Get the value at the given percentile (0 to 100).  This is the largest
+     * value which could have been recorded into the bucket holding the
+     * percentile so we never under report.  That can be a little more than the
+     * largest value actually recorded so callers which know the max should
+     * clamp to it (BenchmarkMeta does).  Zero when nothing was recorded.
+     */
+    public long getValueAtPercentile( double percentile ) {
+
+        long count = getCount();
+
+        if ( count == 0 )
+            return 0;
+
+        long rank = Math.round( ( percentile / 100D ) * count );
+        rank = Math.max( 1, Math.min( count, rank ) );
+
+        Rows rows = this.rows;
+
+        long seen = 0;
+
+        for ( int i = 0; i < rows.rows.length; ++i ) {
+
+            AtomicLongArray row = rows.rows[i];
+
+            if ( row == null )
+                continue;
+
+            for ( int j = 0; j < SUB_BUCKETS; ++j ) {
+
+                seen += row.get( j );
+
+                if ( seen >= rank )
+                    return highestEquivalentValue( ( ( rows.base + i ) << SUB_BITS ) | j );
+
+            }
+
+        }
+
+        //the counts moved underneath us.
+        return highestEquivalentValue( ROWS * SUB_BUCKETS - 1 );
+
+    }
+
+    /**
+     * Add all the values in the given histogram into this one.
+     */
+    public void add( Histogram histogram ) {
+
+        Rows rows = histogram.rows;
+
+        if ( rows == null )
+            return;
+
+        for ( int i = 0; i < rows.rows.length; ++i ) {
+
+            AtomicLongArray row = rows.rows[i];
+
+            if ( row == null )
+                continue;
+
+            for ( int j = 0; j < SUB_BUCKETS; ++j ) {
+
+                long count = row.get( j );
+
+                if ( count > 0 )
+                    row( rows.base + i ).addAndGet( j, count );
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Zero all the counts.  The rows we've allocated are kept so a recycled
+     * histogram doesn't have to allocate them again.  Only call this when
+     * nobody is recording.
+     */
+    public void reset() {
+
+        Rows rows = this.rows;
+
+        if ( rows == null )
+            return;
+
+        for ( int i = 0; i < rows.rows.length; ++i ) {
+
+            AtomicLongArray row = rows.rows[i];
+
+            if ( row == null )
+                continue;
+
+            for ( int j = 0; j < SUB_BUCKETS; ++j ) {
+                row.set( j, 0 );
+            }
+
+        }
+
+    }
+
+    private AtomicLongArray row( int index ) {
+
+        Rows rows = this.rows;
+
+        if ( rows != null ) {
+
+            int offset = index - rows.base;
+
+            if ( offset >= 0 && offset < rows.rows.length ) {
+
+                AtomicLongArray row = rows.rows[ offset ];
+
+                //NOTE: rows are read without a lock.  AtomicLongArray only has
+                //a final field so a row is safely published even though we
+                //read it from a plain array.  If we see null we just take the
+                //slow path.
+                if ( row != null )
+                    return row;
+
+            }
+
+        }
+
+        return createRow( index );
+
+    }
+
+    private synchronized AtomicLongArray createRow( int index ) {
+
+        Rows current = rows;
+
+        if ( current == null ) {
+            current = new Rows( index, 1 );
+        } else if ( index < current.base || index >= current.base + current.rows.length ) {
+
+            int base = Math.min( index, current.base );
+            int end = Math.max( index + 1, current.base + current.rows.length );
+
+            Rows wider = new Rows( base, end - base );
+
+            System.arraycopy( current.rows, 0,
+                              wider.rows, current.base - base,
+                              current.rows.length );
+
+            current = wider;
+
+        }
+
+        int offset = index - current.base;
+
+        if ( current.rows[ offset ] == null )
+            current.rows[ offset ] = new AtomicLongArray( SUB_BUCKETS );
+
+        rows = current;
+
+        return current.rows[ offset ];
+
+    }
+
+    /**
+     * The bucket index (row << SUB_BITS | sub bucket) for the given value.
+     */
+    static int index( long value ) {
+
+        if ( value < 0 )
+            value = 0;
+
+        if ( value > MAX_VALUE )
+            value = MAX_VALUE;
+
+        if ( value < SUB_BUCKETS )
+            return (int)value;
+
+        int magnitude = 63 - Long.numberOfLeadingZeros( value );
+        int shift = magnitude - SUB_BITS;
+
+        return ( ( shift + 1 ) << SUB_BITS ) | (int)( ( value >>> shift ) & SUB_MASK );
+
+    }
+
+    /**
+     * The largest value which maps to the given bucket index.
+     */
+    static long highestEquivalentValue( int index ) {
+
+        int row = index >>> SUB_BITS;
+        long sub = index & SUB_MASK;
+
+        if ( row == 0 )
+            return sub;
+
+        int shift = row - 1;
+
+        return ( ( ( SUB_BUCKETS + sub + 1 ) << shift ) ) - 1;
+
+    }
+
+    /**
+     * A contiguous range of rows starting at row 'base'.
+     */
+    static class Rows {
+
+        final int base;
+
+        final AtomicLongArray[] rows;
+
+        Rows( int base, int length ) {
+            this.base = base;
+            this.rows = new AtomicLongArray[ length ];
+        }
+
+    }
+
+}
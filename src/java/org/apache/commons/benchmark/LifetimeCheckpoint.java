@@ -0,0 +1,305 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p> Periodically saves the lifetime totals of every registered benchmark to
+ * disk so that they survive a restart.  This is optional.  Nothing is written
+ * unless start() (or save()) is called.
+ *
+ * <code>
+ *
+ * LifetimeCheckpoint.start( new File( "/var/lib/foo/benchmark.checkpoint" ) );
+ *
+ * </code>
+ *
+ * <p> When started the file is loaded first and the saved totals are added to
+ * Benchmark.getLifetime() for each benchmark of the same name.  The file is
+ * then rewritten every INTERVAL millis and once more when the VM exits.  Each
+ * save writes to a temp file and renames it over the old one so a crash can't
+ * leave a half written checkpoint.
+ *
+ * <p> Only the counters, totals, and extremes are saved.  Lifetime
+ * percentiles only cover the current VM.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class LifetimeCheckpoint {
+
+    /**
+     * How often (in millis) we write the checkpoint.
+     */
+    public static long INTERVAL = 5 * 60 * 1000;
+
+    /**
+     * Totals loaded from a previous checkpoint keyed by benchmark name.
+     */
+    static Map<String,BenchmarkMeta> restored = new ConcurrentHashMap();
+
+    private static Thread thread = null;
+
+    /**
+     * Load the given checkpoint (if it exists) and start saving to it in the
+     * background.
+     */
+    public static void start( final File file ) throws IOException {
+
+        synchronized( LifetimeCheckpoint.class ) {
+
+            if ( thread != null )
+                return;
+
+            if ( file.exists() )
+                load( file );
+
+            Thread t = new Thread( "benchmark-checkpoint" ) {
+
+                    public void run() {
+
+                        while ( true ) {
+
+                            try {
+
+                                Thread.sleep( INTERVAL );
+
+                                save( file );
+
+                            } catch ( InterruptedException e ) {
+                                return;
+                            } catch ( Throwable t ) {
+                                //never let the checkpoint thread die.
+                                t.printStackTrace();
+                            }
+
+                        }
+
+                    }
+
+                };
+
+            t.setDaemon( true );
+            t.start();
+
+            Runtime.getRuntime().addShutdownHook( new Thread( "benchmark-checkpoint-shutdown" ) {
+
+                    public void run() {
+
+                        try {
+                            save( file );
+                        } catch ( IOException e ) {
+                            e.printStackTrace();
+                        }
+
+                    }
+
+                } );
+
+            thread = t;
+
+        }
+
+    }
+
+    /**
+     * Load the totals from the given checkpoint.  These replace anything
+     * previously loaded.
+     */
+    public static void load( File file ) throws IOException {
+
+        Properties props = new Properties();
+
+        InputStream in = new FileInputStream( file );
+
+        try {
+            props.load( in );
+        } finally {
+            in.close();
+        }
+
+        Map<String,BenchmarkMeta> result = new ConcurrentHashMap();
+
+        Iterator it = props.keySet().iterator();
+
+        while ( it.hasNext() ) {
+
+            String name = (String)it.next();
+
+            try {
+                result.put( name, parse( props.getProperty( name ) ) );
+            } catch ( RuntimeException e ) {
+                throw new IOException( "Invalid checkpoint entry for " + name + ": " + e.getMessage() );
+            }
+
+        }
+
+        restored = result;
+
+    }
+
+    /**
+     * Write the lifetime totals of every registered benchmark to the given
+     * file.  Benchmarks which were restored but haven't been used since the
+     * restart are written back out as is.
+     */
+    public static void save( File file ) throws IOException {
+
+        Properties props = new Properties();
+
+        Iterator<Map.Entry<String,BenchmarkMeta>> restoredIt = restored.entrySet().iterator();
+
+        while ( restoredIt.hasNext() ) {
+
+            Map.Entry<String,BenchmarkMeta> entry = restoredIt.next();
+
+            props.setProperty( entry.getKey(), format( entry.getValue() ) );
+
+        }
+
+        Iterator<Benchmark> it = Benchmark.getBenchmarks().values().iterator();
+
+        while ( it.hasNext() ) {
+
+            Benchmark benchmark = it.next();
+
+            if ( benchmark.getName() == null )
+                continue;
+
+            props.setProperty( benchmark.getName(), format( benchmark.getLifetime() ) );
+
+        }
+
+        File tmp = new File( file.getPath() + ".tmp" );
+
+        OutputStream out = new FileOutputStream( tmp );
+
+        try {
+            props.store( out, "benchmark lifetime checkpoint" );
+        } finally {
+            out.close();
+        }
+
+        //renameTo won't replace an existing file on every platform.
+        if ( tmp.renameTo( file ) == false ) {
+
+            file.delete();
+
+            if ( tmp.renameTo( file ) == false )
+                throw new IOException( "Unable to rename " + tmp + " to " + file );
+
+        }
+
+    }
+
+    /**
+     * Add the totals restored from the checkpoint (if any) for the given
+     * benchmark.
+     */
+    static void restore( String name, BenchmarkMeta meta ) {
+
+        if ( name == null )
+            return;
+
+        BenchmarkMeta previous = restored.get( name );
+
+        if ( previous == null )
+            return;
+
+        meta.add( previous );
+        meta.duration = meta.durationNanos / BenchmarkWindow.NANOS_PER_MILLI;
+
+        //the restored totals started before anything in this VM.
+        if ( previous.timestamp >= 0 ) {
+            meta.timestamp = previous.timestamp;
+            meta.elapsed = Benchmark.CLOCK.currentTimeMillis() - previous.timestamp;
+        }
+
+    }
+
+    static String format( BenchmarkMeta meta ) {
+
+        return meta.timestamp + "," +
+               meta.started + "," +
+               meta.completed + "," +
+               meta.durationNanos + "," +
+               meta.cache_hits + "," +
+               meta.cache_misses + "," +
+               meta.cache_sets + "," +
+               meta.maxDurationNanos + "," +
+               meta.cache_evictions + "," +
+               meta.valueCount + "," +
+               meta.valueSum + "," +
+               meta.minValue + "," +
+               meta.maxValue + "," +
+               meta.failed + "," +
+               meta.failedDurationNanos + "," +
+               meta.sampled;
+
+    }
+
+    static BenchmarkMeta parse( String value ) {
+
+        String[] fields = value.split( "," );
+
+        //older checkpoints don't have the fields after the first 8.
+        if ( fields.length < 8 )
+            throw new IllegalArgumentException( "Expected at least 8 fields: " + value );
+
+        BenchmarkMeta meta = new BenchmarkMeta();
+
+        meta.timestamp        = Long.parseLong( fields[0] );
+        meta.started          = Long.parseLong( fields[1] );
+        meta.completed        = Long.parseLong( fields[2] );
+        meta.durationNanos    = Long.parseLong( fields[3] );
+        meta.cache_hits       = Integer.parseInt( fields[4] );
+        meta.cache_misses     = Integer.parseInt( fields[5] );
+        meta.cache_sets       = Integer.parseInt( fields[6] );
+        meta.maxDurationNanos = Long.parseLong( fields[7] );
+
+        if ( fields.length > 8 )
+            meta.cache_evictions = Integer.parseInt( fields[8] );
+
+        if ( fields.length > 9 ) {
+            meta.valueCount   = Long.parseLong( fields[9] );
+            meta.valueSum     = Long.parseLong( fields[10] );
+            meta.minValue     = Long.parseLong( fields[11] );
+            meta.maxValue     = Long.parseLong( fields[12] );
+        }
+
+        if ( fields.length > 13 ) {
+            meta.failed              = Long.parseLong( fields[13] );
+            meta.failedDurationNanos = Long.parseLong( fields[14] );
+        }
+
+        if ( fields.length > 15 ) {
+            meta.sampled = Long.parseLong( fields[15] );
+        } else {
+            //older checkpoints didn't sample so every completion was timed.
+            meta.sampled = meta.completed;
+        }
+
+        meta.duration = meta.durationNanos / BenchmarkWindow.NANOS_PER_MILLI;
+
+        return meta;
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> Clock which only moves when told to.  Used in tests to get
+ * deterministic durations and rollovers without sleeping.
+ *
+ * <code>
+ *
+ * ManualClock clock = new ManualClock( 0 );
+ * Benchmark.CLOCK = clock;
+ *
+ * benchmark.start();
+ * clock.advance( 5 );
+ * benchmark.complete(); //duration is exactly 5ms
+ *
+ * </code>
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class ManualClock extends BenchmarkClock {
+
+    private volatile long currentTimeMillis = 0;
+
+    private volatile long nanoTime = 0;
+
+    public ManualClock( long currentTimeMillis ) {
+        set( currentTimeMillis );
+    }
+
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * Set the wall time (in millis).  Nano time is reset to match.
+     */
+    public synchronized void set( long currentTimeMillis ) {
+        this.currentTimeMillis = currentTimeMillis;
+        this.nanoTime = currentTimeMillis * BenchmarkWindow.NANOS_PER_MILLI;
+    }
+
+    /**
+     * Move both clocks forward by the given number of millis.
+     */
+    public synchronized void advance( long millis ) {
+        currentTimeMillis += millis;
+        nanoTime += millis * BenchmarkWindow.NANOS_PER_MILLI;
+    }
+
+    /**
+     * Move only the nano clock forward.  Handy for durations shorter than a
+     * milli.
+     */
+    public synchronized void advanceNanos( long nanos ) {
+        nanoTime += nanos;
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> Measures the rate of events with exponentially weighted moving averages
+ * over 1, 5, and 15 minutes.  This is the same math the UNIX load average
+ * uses.
+ *
+ * <p> The trackers are tumbling windows so right after a rollover 'now' is
+ * nearly empty and 'last' can be a whole interval old.  A meter gives a smooth
+ * current rate instead.  Every tick (TICK_INTERVAL) we take the events marked
+ * since the last tick and fold them into each average with:
+ *
+ * <code>
+ *
+ * rate += alpha * ( instantRate - rate )
+ * alpha = 1 - exp( -tick / window )
+ *
+ * </code>
+ *
+ * <p> Marking is a single lock free add into a StripedCounters row.  Ticks are
+ * done by the RolloverScheduler in the background (and by readers if the
+ * scheduler is behind) so recording threads never look at the clock.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class Meter implements Rollable {
+
+    /**
+     * How often (in millis) the averages are updated.
+     */
+    public static final long TICK_INTERVAL = 5000;
+
+    private static final double SECONDS_PER_TICK = TICK_INTERVAL / 1000D;
+
+    private static final double M1_ALPHA  = alpha( 1 );
+    private static final double M5_ALPHA  = alpha( 5 );
+    private static final double M15_ALPHA = alpha( 15 );
+
+    /**
+     * Events marked since the last tick.
+     */
+    private StripedCounters uncounted = new StripedCounters( 1 );
+
+    /**
+     * Every event we've ever marked.  Only updated on tick.
+     */
+    private volatile long count = 0;
+
+    /**
+     * The time (in millis) the meter was started.  -1 until the first event.
+     */
+    private volatile long startTime = -1;
+
+    /**
+     * The time (in millis) of the last tick.
+     */
+    private volatile long lastTick = -1;
+
+    // events per second
+    private volatile double m1Rate  = 0;
+    private volatile double m5Rate  = 0;
+    private volatile double m15Rate = 0;
+
+    private boolean initialized = false;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Record that an event happened.
+     */
+    public void mark() {
+        mark( 1 );
+    }
+
+    /**
+     * Record that n events happened.
+     */
+    public void mark( long n ) {
+
+        if ( startTime < 0 )
+            open();
+
+        uncounted.add( 0, n );
+
+    }
+
+    /**
+     * Start ticking.  Only done on the first event so that meters nobody uses
+     * don't cost the scheduler anything.
+     */
+    private synchronized void open() {
+
+        if ( startTime >= 0 )
+            return;
+
+        long now = Benchmark.CLOCK.currentTimeMillis();
+
+        lastTick = now;
+        startTime = now;
+
+        RolloverScheduler.schedule( this );
+
+    }
+
+    /**
+     * The total number of events.
+     */
+    public long getCount() {
+        return tickWhenNecessary().count + uncounted.sum( 0 );
+    }
+
+    /**
+     * Rate (events per second) decayed over one minute.
+     */
+    public double getOneMinuteRate() {
+        return tickWhenNecessary().m1Rate;
+    }
+
+    /**
+     * Rate (events per second) decayed over five minutes.
+     */
+    public double getFiveMinuteRate() {
+        return tickWhenNecessary().m5Rate;
+    }
+
+    /**
+     * Rate (events per second) decayed over fifteen minutes.
+     */
+    public double getFifteenMinuteRate() {
+        return tickWhenNecessary().m15Rate;
+    }
+
+    /**
+     * Mean rate (events per second) since the first event.
+     */
+    public double getMeanRate() {
+
+        tickWhenNecessary();
+
+        long startTime = this.startTime;
+
+        if ( startTime < 0 )
+            return 0;
+
+        long elapsed = lastTick - startTime;
+
+        if ( elapsed <= 0 )
+            return 0;
+
+        return count / ( elapsed / 1000D );
+
+    }
+
+    /**
+     * Copy the 1, 5, and 15 minute rates into the given array without
+     * ticking.  The scheduler keeps them at most one tick behind.
+     */
+    void readRates( double[] rates, int offset ) {
+
+        rates[ offset ]     = m1Rate;
+        rates[ offset + 1 ] = m5Rate;
+        rates[ offset + 2 ] = m15Rate;
+
+    }
+
+    private Meter tickWhenNecessary() {
+
+        rolloverWhenNecessary( Benchmark.CLOCK.currentTimeMillis() );
+        return this;
+
+    }
+
+    // **** Rollable ************************************************************
+
+    public long nextRollover() {
+        return lastTick + TICK_INTERVAL;
+    }
+
+    /**
+     * Apply every tick that has passed.  If we've fallen behind the events
+     * are all counted in the first tick and the remaining ticks just decay.
+     */
+    public synchronized void rolloverWhenNecessary( long currentTimeMillis ) {
+
+        if ( startTime < 0 )
+            return;
+
+        while ( currentTimeMillis - lastTick >= TICK_INTERVAL ) {
+
+            long n = uncounted.sum( 0 );
+            uncounted.add( 0, -n );
+
+            tick( n );
+
+            lastTick += TICK_INTERVAL;
+
+        }
+
+    }
+
+    private void tick( long n ) {
+
+        count += n;
+
+        double instantRate = n / SECONDS_PER_TICK;
+
+        if ( initialized ) {
+
+            m1Rate  += M1_ALPHA  * ( instantRate - m1Rate );
+            m5Rate  += M5_ALPHA  * ( instantRate - m5Rate );
+            m15Rate += M15_ALPHA * ( instantRate - m15Rate );
+
+        } else {
+
+            m1Rate  = instantRate;
+            m5Rate  = instantRate;
+            m15Rate = instantRate;
+
+            initialized = true;
+
+        }
+
+    }
+
+    /**
+     * Stop ticking this meter.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private static double alpha( int minutes ) {
+        return 1 - Math.exp( -SECONDS_PER_TICK / 60D / minutes );
+    }
+
+    public String toString() {
+
+        return String.format( "count:%s, m1:%.2f/s, m5:%.2f/s, m15:%.2f/s",
+                              getCount(),
+                              getOneMinuteRate(),
+                              getFiveMinuteRate(),
+                              getFifteenMinuteRate() );
+
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * Anything which the RolloverScheduler rolls over in the background.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+interface Rollable {
+
+    /**
+     * The time (in millis) when we next need to be rolled over.
+     */
+    long nextRollover();
+
+    /**
+     * Roll over if nextRollover() has passed.
+     */
+    void rolloverWhenNecessary( long currentTimeMillis );
+
+    /**
+     * Once closed we're dropped by the scheduler.
+     */
+    boolean isClosed();
+
+}
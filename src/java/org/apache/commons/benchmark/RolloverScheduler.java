@@ -0,0 +1,317 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p> Daemon thread which rolls over every active BenchmarkWindow when its
+ * current bucket expires.  Meters are ticked the same way.
+ *
+ * <p> Originally rollover happened lazily inside start()/complete() on the
+ * caller's thread.  That meant idle benchmarks never rolled over (so their
+ * 'last' interval went stale) and the thread which happened to cross the
+ * interval boundary paid for the rollover and any listeners.  Now recording
+ * threads only ever increment the current bucket and this thread swaps in the
+ * new bucket off the hot path.
+ *
+ * <p> Windows are kept in a hierarchical TimingWheel keyed on their next
+ * rollover time so each tick only touches the windows which are actually due.
+ * When a large number of windows expire at once (which is common since most
+ * benchmarks roll over every minute) the sweep is split up across a small
+ * pool of worker threads.
+ *
+ * <p> Windows are only weakly referenced so that a benchmark which is dropped
+ * from the registry (without being cleared) doesn't keep rolling over forever.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class RolloverScheduler {
+
+    /**
+     * How often (in millis) the scheduler wakes up.  This is the maximum
+     * amount of time a rollover can lag behind the interval boundary.
+     */
+    public static long TICK = 10;
+
+    /**
+     * When more than this many windows expire on the same tick we roll them
+     * over in parallel.
+     */
+    public static int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Slots per level of the timing wheel.  With a 10ms tick, 256 slots, and
+     * three levels we can hold about 46 hours before using the overflow list.
+     */
+    static final int WHEEL_SIZE = 256;
+
+    static final int WHEEL_LEVELS = 3;
+
+    /**
+     * Windows which need to be added to the wheel.  The wheel itself is only
+     * touched by the scheduler thread.  Entries are allocated by the thread
+     * opening the window so that the scheduler thread doesn't have to.
+     */
+    private static Queue<TimingWheel.Entry<Reference<Rollable>>> pending = new ConcurrentLinkedQueue();
+
+    private static TimingWheel<Reference<Rollable>> wheel = null;
+
+    private static Thread thread = null;
+
+    private static ExecutorService workers = null;
+
+    /**
+     * When (in millis) we next look for idle benchmarks to evict.
+     */
+    private static long nextEviction = 0;
+
+    /**
+     * Start rolling over the given window.  The window is rescheduled after
+     * each rollover until it's closed.
+     */
+    static void schedule( Rollable window ) {
+
+        pending.add( new TimingWheel.Entry( new WeakReference( window ) ) );
+
+        startWhenNecessary();
+
+    }
+
+    /**
+     * The number of windows currently being rolled over.
+     */
+    public static int size() {
+
+        synchronized( RolloverScheduler.class ) {
+            return ( wheel == null ? 0 : wheel.size() ) + pending.size();
+        }
+
+    }
+
+    private static void startWhenNecessary() {
+
+        if ( thread != null )
+            return;
+
+        synchronized( RolloverScheduler.class ) {
+
+            if ( thread != null )
+                return;
+
+            wheel = new TimingWheel( TICK,
+                                     WHEEL_SIZE,
+                                     WHEEL_LEVELS,
+                                     Benchmark.CLOCK.currentTimeMillis() );
+
+            Thread t = new Thread( "benchmark-rollover" ) {
+
+                    public void run() {
+                        RolloverScheduler.run();
+                    }
+
+                };
+
+            t.setDaemon( true );
+            t.start();
+
+            thread = t;
+
+        }
+
+    }
+
+    private static void run() {
+
+        List<Rollable> windows = new ArrayList();
+
+        while ( true ) {
+
+            try {
+
+                Thread.sleep( TICK );
+
+                long currentTimeMillis = Benchmark.CLOCK.currentTimeMillis();
+
+                TimingWheel.Entry<Reference<Rollable>> expired = null;
+
+                //NOTE: this runs every tick so don't allocate anything (not
+                //even an iterator) unless something actually expired.
+
+                synchronized( RolloverScheduler.class ) {
+
+                    TimingWheel.Entry<Reference<Rollable>> entry = null;
+
+                    while ( ( entry = pending.poll() ) != null ) {
+
+                        Rollable window = entry.item.get();
+
+                        if ( window != null )
+                            wheel.schedule( entry, window.nextRollover() );
+
+                    }
+
+                    expired = wheel.expire( currentTimeMillis );
+
+                }
+
+                if ( Benchmark.IDLE_INTERVALS > 0 && currentTimeMillis >= nextEviction ) {
+                    nextEviction = currentTimeMillis + Benchmark.INTERVAL_1;
+                    Benchmark.evictIdle( currentTimeMillis );
+                }
+
+                if ( expired == null )
+                    continue;
+
+                for ( TimingWheel.Entry<Reference<Rollable>> entry = expired; entry != null; entry = entry.next ) {
+
+                    Rollable window = entry.item.get();
+
+                    if ( window != null )
+                        windows.add( window );
+
+                }
+
+                sweep( windows, currentTimeMillis );
+
+                //don't pin the windows until the next expiry.
+                windows.clear();
+
+                synchronized( RolloverScheduler.class ) {
+
+                    TimingWheel.Entry<Reference<Rollable>> entry = expired;
+
+                    while ( entry != null ) {
+
+                        //schedule() relinks the entry so grab next first.
+                        TimingWheel.Entry<Reference<Rollable>> next = entry.next;
+
+                        Rollable window = entry.item.get();
+
+                        if ( window != null && window.isClosed() == false ) {
+                            wheel.schedule( entry, window.nextRollover() );
+                        }
+
+                        entry = next;
+
+                    }
+
+                }
+
+            } catch ( InterruptedException e ) {
+                return;
+            } catch ( Throwable t ) {
+                //never let the scheduler die.
+                t.printStackTrace();
+            }
+
+        }
+
+    }
+
+    /**
+     * Rollover all the given windows.  Large batches are split across the
+     * worker pool.
+     */
+    static void sweep( final List<Rollable> windows,
+                       final long currentTimeMillis ) throws InterruptedException {
+
+        if ( windows.size() < PARALLEL_THRESHOLD ) {
+            rollover( windows, 0, windows.size(), currentTimeMillis );
+            return;
+        }
+
+        int nrThreads = Runtime.getRuntime().availableProcessors();
+        int chunk = ( windows.size() + nrThreads - 1 ) / nrThreads;
+
+        final CountDownLatch latch = new CountDownLatch( nrThreads );
+
+        for ( int i = 0; i < nrThreads; ++i ) {
+
+            final int from = Math.min( windows.size(), i * chunk );
+            final int to = Math.min( windows.size(), from + chunk );
+
+            getWorkers().execute( new Runnable() {
+
+                    public void run() {
+
+                        try {
+                            rollover( windows, from, to, currentTimeMillis );
+                        } finally {
+                            latch.countDown();
+                        }
+
+                    }
+
+                } );
+
+        }
+
+        latch.await();
+
+    }
+
+    private static void rollover( List<Rollable> windows,
+                                  int from,
+                                  int to,
+                                  long currentTimeMillis ) {
+
+        for ( int i = from; i < to; ++i ) {
+
+            Rollable window = windows.get( i );
+
+            try {
+                window.rolloverWhenNecessary( currentTimeMillis );
+            } catch ( RuntimeException e ) {
+                e.printStackTrace();
+            }
+
+        }
+
+    }
+
+    private static ExecutorService getWorkers() {
+
+        synchronized( RolloverScheduler.class ) {
+
+            if ( workers == null ) {
+
+                workers = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(),
+                                                        new ThreadFactory() {
+
+                        public Thread newThread( Runnable r ) {
+
+                            Thread t = new Thread( r, "benchmark-rollover-worker" );
+                            t.setDaemon( true );
+                            return t;
+
+                        }
+
+                    } );
+
+            }
+
+            return workers;
+
+        }
+
+    }
+
+}
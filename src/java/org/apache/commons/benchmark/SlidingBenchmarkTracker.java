@@ -0,0 +1,81 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> A tracker whose interval slides forward one bucket at a time rather than
+ * tumbling once per interval.  A BenchmarkTracker only ever exposes whole
+ * fixed-boundary intervals so right after a rollover 'now' is nearly empty and
+ * 'last' can be almost a full interval old.  A sliding tracker with a 1 minute
+ * interval on a window of 1 second buckets always answers "how many events in
+ * the last 60 seconds" to within one bucket.
+ *
+ * <p> Recording is the same O(1) striped increment into the window's active
+ * bucket.  Reading sums the N buckets covered by the interval.
+ *
+ * <p> Both values are continuous:
+ *
+ * <ul>
+ *   <li> getNow() covers the active bucket and the N - 1 closed buckets
+ *        before it so it includes events recorded a moment ago.
+ *   <li> getLast() covers the N most recent closed buckets.  It doesn't change
+ *        between rollovers so it's what should be exported or logged.
+ * </ul>
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class SlidingBenchmarkTracker extends BenchmarkTracker {
+
+    SlidingBenchmarkTracker( BenchmarkWindow window, int interval ) {
+        super( window, interval );
+    }
+
+    /**
+     * Get the values for the N most recent closed buckets.
+     */
+    public BenchmarkMeta getLast() {
+
+        BenchmarkInterval current = rolloverWhenNecessary().getWindow().current;
+
+        return sum( current, current.seq - 1 );
+
+    }
+
+    /**
+     * Get the values for the last N buckets including the active one.
+     */
+    public BenchmarkMeta getNow() {
+
+        BenchmarkInterval current = rolloverWhenNecessary().getWindow().current;
+
+        return sum( current, current.seq );
+
+    }
+
+    /**
+     * Sum the N buckets ending with the given one.
+     */
+    private BenchmarkMeta sum( BenchmarkInterval current, long to ) {
+
+        long from = to - getBucketsPerInterval() + 1;
+
+        return getWindow().sum( from, to, timestamp( current, from ) );
+
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p> A fixed width row of long counters which can be incremented from any
+ * number of threads without taking a lock.
+ *
+ * <p> This is the same idea as the striped "cells" used by LongAdder.  We start
+ * out with a single base row which is updated with a CAS.  This is as cheap as
+ * an AtomicLong and only costs a few bytes per counter which matters since we
+ * keep thousands of benchmarks around.  The first time a CAS on the base row
+ * fails we know that more than one thread is hammering this row so we inflate
+ * to one row per stripe (roughly one per CPU).  From then on each thread adds
+ * into its own stripe and the stripes are only folded together when somebody
+ * calls sum() (which happens at rollover or when reading a benchmark).
+ *
+ * <p> Each stripe is padded out to its own cache lines so that two CPUs
+ * incrementing different stripes never fight over the same line.  A thread
+ * picks its stripe with a per thread probe.  When a CAS on the stripe fails
+ * another thread is using the same one so the probe is rehashed and the
+ * thread moves to a different stripe, the same way LongAdder does.  Two hot
+ * threads therefore don't stay stuck on one stripe.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class StripedCounters {
+
+    /**
+     * The number of stripes we inflate to under contention.  This is the
+     * number of CPUs rounded up to a power of two so that we can mask instead
+     * of mod.
+     */
+    static final int STRIPES = nextPowerOfTwo( Runtime.getRuntime().availableProcessors() );
+
+    /**
+     * Number of longs of padding between stripes.  8 longs is a full 64 byte
+     * cache line.
+     */
+    static final int PADDING = 8;
+
+    /**
+     * The probe of the current thread.  Kept in a one element array so that
+     * rehashing doesn't have to go through the ThreadLocal again.
+     */
+    private static final ThreadLocal<int[]> probes = new ThreadLocal<int[]>() {
+
+            protected int[] initialValue() {
+                return new int[] { hash( Thread.currentThread().getId() ) };
+            }
+
+        };
+
+    /**
+     * The number of counters in this row.
+     */
+    private final int width;
+
+    /**
+     * Distance (in longs) between the same counter in two stripes.
+     */
+    private final int stride;
+
+    /**
+     * Uncontended base row.
+     */
+    private final AtomicLongArray base;
+
+    /**
+     * Per stripe rows.  Null until we first see contention.
+     */
+    private volatile AtomicLongArray cells = null;
+
+    public StripedCounters( int width ) {
+
+        this.width = width;
+        this.stride = ((width + PADDING - 1) / PADDING) * PADDING + PADDING;
+        this.base = new AtomicLongArray( width );
+
+    }
+
+    /**
+     * The number of counters in this row.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Add the given value to the counter at the given index.  This never
+     * blocks.
+     */
+    public void add( int index, long value ) {
+
+        AtomicLongArray cells = this.cells;
+
+        if ( cells == null ) {
+
+            long current = base.get( index );
+
+            if ( base.compareAndSet( index, current, current + value ) )
+                return;
+
+            //we lost the race so somebody else is incrementing this row as
+            //well.  Stop using the base row and spread out.
+            cells = inflate();
+
+        }
+
+        int[] probe = probes.get();
+
+        int offset = stripe( probe[0] ) + index;
+
+        long current = cells.get( offset );
+
+        if ( cells.compareAndSet( offset, current, current + value ) )
+            return;
+
+        //somebody else is on our stripe.  Move for next time.
+        probe[0] = rehash( probe[0] );
+
+        cells.getAndAdd( offset, value );
+
+    }
+
+    public void increment( int index ) {
+        add( index, 1 );
+    }
+
+    /**
+     * Add the given value to the counter at the given index and return the
+     * new value of the row (base or stripe) it was added to.  This is NOT the
+     * total but each row counts up one at a time so it's enough to pick every
+     * Nth increment from the same thread.
+     */
+    public long addAndGet( int index, long value ) {
+
+        AtomicLongArray cells = this.cells;
+
+        if ( cells == null ) {
+
+            long current = base.get( index );
+
+            if ( base.compareAndSet( index, current, current + value ) )
+                return current + value;
+
+            cells = inflate();
+
+        }
+
+        int[] probe = probes.get();
+
+        int offset = stripe( probe[0] ) + index;
+
+        long current = cells.get( offset );
+
+        if ( cells.compareAndSet( offset, current, current + value ) )
+            return current + value;
+
+        probe[0] = rehash( probe[0] );
+
+        return cells.addAndGet( offset, value );
+
+    }
+
+    /**
+     * Fold all the stripes together and return the current value for the
+     * given counter.  This is NOT an atomic snapshot.  Concurrent updates may
+     * or may not be included.
+     */
+    public long sum( int index ) {
+
+        long sum = base.get( index );
+
+        AtomicLongArray cells = this.cells;
+
+        if ( cells != null ) {
+
+            for ( int i = index; i < cells.length(); i += stride ) {
+                sum += cells.get( i );
+            }
+
+        }
+
+        return sum;
+
+    }
+
+    /**
+     * Reset all counters to zero.  Only safe when no other threads are adding
+     * to this row.
+     */
+    public void reset() {
+
+        for ( int i = 0; i < width; ++i ) {
+            base.set( i, 0 );
+        }
+
+        AtomicLongArray cells = this.cells;
+
+        if ( cells != null ) {
+
+            for ( int i = 0; i < cells.length(); ++i ) {
+                cells.set( i, 0 );
+            }
+
+        }
+
+    }
+
+    /**
+     * True once this row has seen contention and was spread out across
+     * stripes.
+     */
+    public boolean isInflated() {
+        return cells != null;
+    }
+
+    private AtomicLongArray inflate() {
+
+        synchronized( this ) {
+
+            if ( cells == null ) {
+                cells = new AtomicLongArray( STRIPES * stride );
+            }
+
+            return cells;
+
+        }
+
+    }
+
+    /**
+     * Compute the offset of the stripe for the given probe.
+     */
+    private int stripe( int probe ) {
+        return ( probe & ( STRIPES - 1 ) ) * stride;
+    }
+
+    /**
+     * The initial probe of a thread.  Mix the bits so that sequential thread
+     * IDs don't all land next to each other.  Never zero since rehash() would
+     * keep it there.
+     */
+    static int hash( long id ) {
+
+        long h = id;
+
+        h ^= ( h >>> 33 );
+        h *= 0xff51afd7ed558ccdL;
+        h ^= ( h >>> 33 );
+
+        int result = (int)h;
+
+        return result != 0 ? result : 1;
+
+    }
+
+    /**
+     * Move a probe to a (pseudo random) new stripe.  Marsaglia xorshift.
+     */
+    static int rehash( int probe ) {
+
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+
+        return probe;
+
+    }
+
+    static int nextPowerOfTwo( int value ) {
+
+        int result = 1;
+
+        while ( result < value ) {
+            result <<= 1;
+        }
+
+        return result;
+
+    }
+
+}
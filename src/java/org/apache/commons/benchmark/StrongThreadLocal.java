@@ -16,29 +16,27 @@
 
 package org.apache.commons.benchmark;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
+ * <p> Originally this kept one entry per Thread in a ConcurrentHashMap which
+ * was never cleaned up.  With thread pools that churn (or lots of short lived
+ * threads) the map grew without bound and pinned every dead Thread.  It now
+ * just delegates to a java.lang.ThreadLocal so values live on the Thread itself
+ * and are reclaimed when the thread dies.
  * 
+ * @deprecated Use java.lang.ThreadLocal directly.
  */
 public abstract class StrongThreadLocal<T>  {
 
-    private Map<Thread,T> delegate = new ConcurrentHashMap();
-
-    public T get() {
+    private ThreadLocal<T> delegate = new ThreadLocal<T>() {
 
-        Thread t = Thread.currentThread();
-        
-        T value = delegate.get( t );
+            protected T initialValue() {
+                return StrongThreadLocal.this.initialValue();
+            }
 
-        if ( value == null ) {
-            value = initialValue();
-            delegate.put( t, value );
-        }
+        };
 
-        return value;
-        
+    public T get() {
+        return delegate.get();
     }
 
     protected abstract T initialValue();
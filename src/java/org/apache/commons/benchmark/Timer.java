@@ -0,0 +1,97 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+/**
+ * <p> A benchmark which times operations.  Each operation records a start, a
+ * completion, its duration, and its place in the duration histogram.  Use
+ * begin()/end() to time a block or update() when the duration was measured
+ * somewhere else.
+ *
+ * <code>
+ *
+ * static Timer queries = Timer.getTimer( "org.apache.Foo.query" );
+ *
+ * long t = queries.begin();
+ *
+ * try {
+ *
+ *     //do something expensive
+ *
+ * } finally {
+ *     queries.end( t );
+ * }
+ *
+ * </code>
+ *
+ * <p> Timers don't have cache counters so their buckets are smaller than a
+ * plain Benchmark's.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public class Timer extends Benchmark {
+
+    public Timer( String name ) {
+        super( name );
+    }
+
+    /**
+     * Record an operation which took the given number of nanos.
+     */
+    public void update( long nanos ) {
+
+        if ( DISABLED )
+            return;
+
+        if ( beforeMetric() == false )
+            return;
+
+        window.update( nanos );
+
+        BenchmarkWindow sliding = this.sliding;
+
+        if ( sliding != null )
+            sliding.update( nanos );
+
+        mark();
+
+    }
+
+    /**
+     * Buckets only need the started, completed, failed, and duration counters.
+     */
+    int getWidth() {
+        return BenchmarkInterval.SAMPLED + 1;
+    }
+
+    /**
+     * Factory method for obtaining a timer by name.
+     */
+    public static Timer getTimer( String name ) {
+
+        Benchmark benchmark = benchmarks.get( name );
+
+        if ( benchmark == null ) {
+            benchmark = registerBenchmark( name, new Timer( name ) );
+        }
+
+        return (Timer)checkType( name, benchmark, Timer.class );
+
+    }
+
+}
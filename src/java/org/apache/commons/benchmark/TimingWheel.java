@@ -0,0 +1,260 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.*;
+
+/**
+ * <p> Hierarchical timing wheel used to schedule rollovers.
+ *
+ * <p> Level 0 has one slot per tick.  Each level above it has slots which are
+ * wheelSize times wider than the level below.  An item is placed in the lowest
+ * level which can hold its deadline.  Every time a level wraps around we
+ * cascade the next slot of the level above it down into the lower levels.
+ * Scheduling and expiring are O(1) per item no matter how many items are in
+ * the wheel which is what lets us track 100k+ benchmarks.
+ *
+ * <p> This class is NOT threadsafe.  It's only touched by the
+ * RolloverScheduler thread.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+class TimingWheel<T> {
+
+    /**
+     * Width (in millis) of a level 0 slot.
+     */
+    private long tick = 0;
+
+    /**
+     * Number of slots per level.  Must be a power of two.
+     */
+    private int wheelSize = 0;
+
+    private int mask = 0;
+
+    /**
+     * The head of the entry list for each slot.  slots[level][slot]
+     *
+     * NOTE: the lists are intrusive (linked through Entry.next) so that
+     * moving an entry around the wheel never allocates.  The scheduler thread
+     * should be allocation free when nothing is expiring.
+     */
+    private Entry<T>[][] slots = null;
+
+    /**
+     * Items which are too far in the future for even the top level.
+     */
+    private Entry<T> overflow = null;
+
+    /**
+     * The last tick we've processed.
+     */
+    private long currentTick = 0;
+
+    private int size = 0;
+
+    TimingWheel( long tick, int wheelSize, int levels, long currentTimeMillis ) {
+
+        this.tick = tick;
+        this.wheelSize = wheelSize;
+        this.mask = wheelSize - 1;
+        this.currentTick = currentTimeMillis / tick;
+
+        slots = new Entry[ levels ][ wheelSize ];
+
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedule the given item to expire at the given deadline (in millis).
+     */
+    void schedule( T item, long deadline ) {
+        schedule( new Entry( item ), deadline );
+    }
+
+    /**
+     * Schedule an entry to expire at the given deadline (in millis).  Entries
+     * returned from expire() can be passed back in here to reschedule them
+     * without allocating.
+     */
+    void schedule( Entry<T> entry, long deadline ) {
+
+        ++size;
+
+        entry.deadline = deadline;
+
+        //the slot for the current tick has already been processed.
+        place( entry, currentTick + 1 );
+
+    }
+
+    /**
+     * Advance the wheel to the given time and return every entry whose
+     * deadline has passed as a list linked through Entry.next (or null if
+     * nothing expired).
+     */
+    Entry<T> expire( long currentTimeMillis ) {
+
+        long targetTick = currentTimeMillis / tick;
+
+        Entry<T> expired = null;
+
+        while ( currentTick < targetTick ) {
+
+            ++currentTick;
+
+            cascade( 1 );
+
+            int index = (int)( currentTick & mask );
+
+            Entry<T> entry = slots[0][ index ];
+            slots[0][ index ] = null;
+
+            while ( entry != null ) {
+
+                Entry<T> next = entry.next;
+
+                if ( entry.deadline / tick <= currentTick ) {
+                    --size;
+                    entry.next = expired;
+                    expired = entry;
+                } else {
+                    //this can only happen if the deadline is in a later lap.
+                    place( entry, currentTick + 1 );
+                }
+
+                entry = next;
+
+            }
+
+        }
+
+        return expired;
+
+    }
+
+    /**
+     * Advance the wheel and add the items of every expired entry to the given
+     * list.
+     */
+    void expire( long currentTimeMillis, List<T> expired ) {
+
+        for ( Entry<T> entry = expire( currentTimeMillis ); entry != null; entry = entry.next ) {
+            expired.add( entry.item );
+        }
+
+    }
+
+    /**
+     * When the level below has wrapped around move the entries from the
+     * current slot of this level down into the lower levels.
+     */
+    private void cascade( int level ) {
+
+        long ticksPerSlot = ticksPerSlot( level );
+
+        if ( currentTick % ticksPerSlot != 0 )
+            return;
+
+        Entry<T> entry = null;
+
+        if ( level < slots.length ) {
+
+            //higher levels wrap less often so check them first.
+            cascade( level + 1 );
+
+            int index = (int)( ( currentTick / ticksPerSlot ) & mask );
+
+            entry = slots[ level ][ index ];
+            slots[ level ][ index ] = null;
+
+        } else {
+
+            entry = overflow;
+            overflow = null;
+
+        }
+
+        while ( entry != null ) {
+
+            Entry<T> next = entry.next;
+            place( entry, currentTick );
+            entry = next;
+
+        }
+
+    }
+
+    /**
+     * Put the entry in the lowest level that can hold it.  Anything with a
+     * deadline before minTick expires at minTick.
+     */
+    private void place( Entry<T> entry, long minTick ) {
+
+        long deadlineTick = Math.max( entry.deadline / tick, minTick );
+
+        for ( int level = 0; level < slots.length; ++level ) {
+
+            long ticksPerSlot = ticksPerSlot( level );
+
+            if ( deadlineTick / ticksPerSlot - currentTick / ticksPerSlot < wheelSize ) {
+
+                int index = (int)( ( deadlineTick / ticksPerSlot ) & mask );
+
+                entry.next = slots[ level ][ index ];
+                slots[ level ][ index ] = entry;
+                return;
+
+            }
+
+        }
+
+        entry.next = overflow;
+        overflow = entry;
+
+    }
+
+    private long ticksPerSlot( int level ) {
+
+        long result = 1;
+
+        for ( int i = 0; i < level; ++i ) {
+            result *= wheelSize;
+        }
+
+        return result;
+
+    }
+
+    static class Entry<T> {
+
+        T item;
+        long deadline;
+        Entry<T> next;
+
+        Entry( T item ) {
+            this.item = item;
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * The count, sum, min, max, and distribution of the values passed to
+ * Benchmark.record() for one bucket.  Most benchmarks never record values so
+ * buckets only allocate this on the first one.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+class ValueStats {
+
+    static final int COUNT = 0;
+    static final int SUM   = 1;
+
+    final StripedCounters counters = new StripedCounters( 2 );
+
+    final Histogram histogram = new Histogram();
+
+    volatile long min = Long.MAX_VALUE;
+
+    volatile long max = Long.MIN_VALUE;
+
+    private static final AtomicLongFieldUpdater<ValueStats> MIN =
+        AtomicLongFieldUpdater.newUpdater( ValueStats.class, "min" );
+
+    private static final AtomicLongFieldUpdater<ValueStats> MAX =
+        AtomicLongFieldUpdater.newUpdater( ValueStats.class, "max" );
+
+    ValueStats() { }
+
+    /**
+     * Copy the given stats.  Only safe once writers are done with them.
+     */
+    ValueStats( ValueStats stats ) {
+
+        counters.add( COUNT, stats.counters.sum( COUNT ) );
+        counters.add( SUM, stats.counters.sum( SUM ) );
+        histogram.add( stats.histogram );
+
+        min = stats.min;
+        max = stats.max;
+
+    }
+
+    void record( long value ) {
+
+        counters.increment( COUNT );
+        counters.add( SUM, value );
+        histogram.record( value );
+
+        //like maxDuration we only CAS when the value is a new extreme.
+        long current = min;
+
+        while ( value < current ) {
+
+            if ( MIN.compareAndSet( this, current, value ) )
+                break;
+
+            current = min;
+
+        }
+
+        current = max;
+
+        while ( value > current ) {
+
+            if ( MAX.compareAndSet( this, current, value ) )
+                break;
+
+            current = max;
+
+        }
+
+    }
+
+    boolean isEmpty() {
+        return counters.sum( COUNT ) == 0;
+    }
+
+    void reset() {
+
+        counters.reset();
+        histogram.reset();
+
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+
+    }
+
+    void addTo( BenchmarkMeta meta ) {
+
+        meta.valueCount += counters.sum( COUNT );
+        meta.valueSum   += counters.sum( SUM );
+
+        meta.minValue = Math.min( meta.minValue, min );
+        meta.maxValue = Math.max( meta.maxValue, max );
+
+        meta.valueHistogram.add( histogram );
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p> Lets any number of writers record into an active buffer while a single
+ * reader swaps in a new buffer and waits until every writer which might still
+ * be using the old one is done.  This is the same phaser HdrHistogram's
+ * Recorder uses.
+ *
+ * <p> Writers bracket each update with writerEnter()/writerExit().  Both are a
+ * single atomic increment so writers never wait on anybody.  The reader swaps
+ * the active buffer and then calls flipPhase() which waits for the writers
+ * that entered before the swap to exit.  After that nobody can touch the old
+ * buffer and it can be read (or reset) safely.
+ *
+ * <p> Readers hold the lock on the phaser itself while swapping buffers and
+ * flipping so only one flip is ever in progress.
+ *
+ * <p> The sign of startEpoch tells writers which phase they entered in.  Each
+ * phase has its own end counter and the reader waits until the end counter of
+ * the phase it just closed catches up with the start counter it swapped out.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+class WriterReaderPhaser {
+
+    private static final AtomicLongFieldUpdater<WriterReaderPhaser> START_EPOCH =
+        AtomicLongFieldUpdater.newUpdater( WriterReaderPhaser.class, "startEpoch" );
+
+    private static final AtomicLongFieldUpdater<WriterReaderPhaser> EVEN_END_EPOCH =
+        AtomicLongFieldUpdater.newUpdater( WriterReaderPhaser.class, "evenEndEpoch" );
+
+    private static final AtomicLongFieldUpdater<WriterReaderPhaser> ODD_END_EPOCH =
+        AtomicLongFieldUpdater.newUpdater( WriterReaderPhaser.class, "oddEndEpoch" );
+
+    private volatile long startEpoch = 0;
+
+    private volatile long evenEndEpoch = 0;
+
+    private volatile long oddEndEpoch = Long.MIN_VALUE;
+
+    /**
+     * Enter a writer critical section.  The result must be passed to
+     * writerExit().
+     */
+    long writerEnter() {
+        return START_EPOCH.getAndIncrement( this );
+    }
+
+    void writerExit( long epoch ) {
+
+        if ( epoch < 0 ) {
+            ODD_END_EPOCH.getAndIncrement( this );
+        } else {
+            EVEN_END_EPOCH.getAndIncrement( this );
+        }
+
+    }
+
+    /**
+     * Start a new phase and wait for every writer that entered during the
+     * previous phase to exit.  Callers must swap the active buffer BEFORE
+     * calling this and must hold the lock on this phaser.
+     */
+    void flipPhase() {
+
+        boolean nextPhaseIsEven = startEpoch < 0;
+
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+
+        //reset the end counter of the phase we're entering before any writer
+        //can enter it.
+        if ( nextPhaseIsEven ) {
+            evenEndEpoch = initialStartValue;
+        } else {
+            oddEndEpoch = initialStartValue;
+        }
+
+        long startValueAtFlip = START_EPOCH.getAndSet( this, initialStartValue );
+
+        //writers are only inside for a few nanos so spinning is fine.
+        while ( ( nextPhaseIsEven ? oddEndEpoch : evenEndEpoch ) != startValueAtFlip ) {
+            Thread.yield();
+        }
+
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package org.apache.commons.benchmark.config;
 
+import org.apache.commons.benchmark.*;
 import org.apache.commons.benchmark.rrd.*;
 
 import java.util.*;
@@ -45,6 +46,8 @@ public class XMLConfigurator {
 
         Element root = document.getDocumentElement();
 
+        configureCategories( root );
+
         NodeList tasksList = root.getElementsByTagName( "tasks" );
 
         if ( tasksList.getLength() > 0 ) {
@@ -90,6 +93,80 @@ public class XMLConfigurator {
 
     }
 
+    /**
+     * Process category elements.  For example:
+     *
+     * <code>
+     *
+     * &lt;category name="org.foo" enabled="false" /&gt;
+     *
+     * &lt;category name="org.foo.Bar"
+     *           enabled="true"
+     *           sampleRate="0.1"
+     *           logOnRollover="true"
+     *           broadcastOnRollover="false"
+     *           metered="true" /&gt;
+     *
+     * </code>
+     *
+     * Attributes which aren't given are inherited from the parent category.
+     */
+    public static void configureCategories( Element root ) throws Exception {
+
+        NodeList categoryList = root.getElementsByTagName( "category" );
+
+        //every setter would find the category of every benchmark again.  Do
+        //it once at the end.
+        BenchmarkCategory.beginUpdate();
+
+        try {
+
+            configureCategories( categoryList );
+
+        } finally {
+            BenchmarkCategory.endUpdate();
+        }
+
+    }
+
+    private static void configureCategories( NodeList categoryList ) {
+
+        for ( int i = 0; i < categoryList.getLength(); ++i ) {
+
+            Element categoryElement = (Element)categoryList.item( i );
+
+            BenchmarkCategory category =
+                BenchmarkCategory.getCategory( categoryElement.getAttribute( "name" ) );
+
+            String enabled = categoryElement.getAttribute( "enabled" );
+
+            if ( enabled.length() > 0 )
+                category.setEnabled( Boolean.valueOf( enabled ) );
+
+            String sampleRate = categoryElement.getAttribute( "sampleRate" );
+
+            if ( sampleRate.length() > 0 )
+                category.setSampleRate( Double.valueOf( sampleRate ) );
+
+            String logOnRollover = categoryElement.getAttribute( "logOnRollover" );
+
+            if ( logOnRollover.length() > 0 )
+                category.setLogOnRollover( Boolean.valueOf( logOnRollover ) );
+
+            String broadcastOnRollover = categoryElement.getAttribute( "broadcastOnRollover" );
+
+            if ( broadcastOnRollover.length() > 0 )
+                category.setBroadcastOnRollover( Boolean.valueOf( broadcastOnRollover ) );
+
+            String metered = categoryElement.getAttribute( "metered" );
+
+            if ( metered.length() > 0 )
+                category.setMetered( Boolean.valueOf( metered ) );
+
+        }
+
+    }
+
     public static void applyParams( Source source, Element sourceElement )
         throws Exception {
 
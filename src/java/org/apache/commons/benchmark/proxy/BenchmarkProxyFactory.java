@@ -52,21 +52,51 @@ class BenchmarkInvocationHandler implements InvocationHandler {
 
     public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
 
+        //need to set this as accessible or we can't call it when its in a diff package.
+        method.setAccessible( true );
+
+        //don't even build the name when we're disabled.  Callers still have
+        //to see the same exceptions either way.
+        if ( Benchmark.DISABLED ) {
+
+            try {
+                return method.invoke( target, args );
+            } catch ( InvocationTargetException e ) {
+                throw e.getCause();
+            }
+
+        }
+
         String name = method.getDeclaringClass().getName() + "." + method.getName();
         
         Benchmark benchmark = Benchmark.getBenchmark( name );
 
+        Throwable failure = null;
+
         //before our method
         benchmark.start();
 
-        //need to set this as accessible or we can't call it when its in a diff package.
-        method.setAccessible( true );
-        Object result = method.invoke( target, args );
+        try {
 
-        //after our method
-        benchmark.complete();
+            return method.invoke( target, args );
         
-        return result;
+        } catch ( InvocationTargetException e ) {
+
+            //rethrow what the target threw instead of the reflection wrapper
+            //so callers see the same exception they would without the proxy.
+            failure = e.getCause();
+            throw failure;
+
+        } catch ( Throwable t ) {
+            failure = t;
+            throw t;
+        } finally {
+
+            //after our method.  This has to happen even when it throws or
+            //started would be inflated forever.
+            benchmark.complete( failure );
+
+        }
 
     }
 
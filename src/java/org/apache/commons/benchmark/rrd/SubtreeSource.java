@@ -0,0 +1,49 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark.rrd;
+
+import org.apache.commons.benchmark.*;
+
+/**
+ * Source which logs the number of operations completed in the last minute by
+ * every benchmark under a given prefix (for example "org.foo" for org.foo.*).
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin A. Burton</a>
+ * @version $Id: $
+ */
+public class SubtreeSource extends Source {
+
+    private String prefix = null;
+    
+    /**
+     * Get the current value for this counter.
+     *
+     * @author <a href="mailto:burton@tailrank.com">Kevin A. Burton</a>
+     */
+    public long getValue() throws Exception {
+        return Benchmark.getIndex().sum( prefix ).getCompleted();
+    }
+
+    public void setPrefix( String prefix ) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+    
+}
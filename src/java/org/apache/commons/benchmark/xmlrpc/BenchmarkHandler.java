@@ -46,9 +46,15 @@ public class BenchmarkHandler {
 
         Map map = new Hashtable();
 
-        addHashtableMetrics( map, benchmark, benchmark.getTracker1().getLast(),  "1min." );
-        addHashtableMetrics( map, benchmark, benchmark.getTracker5().getLast(),  "5min." );
-        addHashtableMetrics( map, benchmark, benchmark.getTracker15().getLast(), "15min." );
+        BenchmarkSnapshot snapshot = benchmark.snapshot();
+        
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LAST_1,   "1min." );
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LAST_5,   "5min." );
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LAST_15,  "15min." );
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LIFETIME, "lifetime." );
+        
+        addMeterMetrics( map, snapshot, 0, "" );
+        addErrorMetrics( map, snapshot, 0, "" );
         
         return map;
         
@@ -63,13 +69,20 @@ public class BenchmarkHandler {
 
         Map map = new Hashtable();
 
-        addHashtableMetrics( map, benchmark, benchmark.getTracker1().getLast(),   "last.1min."  );
-        addHashtableMetrics( map, benchmark, benchmark.getTracker5().getLast(),   "last.5min."  );
-        addHashtableMetrics( map, benchmark, benchmark.getTracker15().getLast(),  "last.15min." );
+        BenchmarkSnapshot snapshot = benchmark.snapshot();
+
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LAST_1,   "last.1min."  );
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LAST_5,   "last.5min."  );
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LAST_15,  "last.15min." );
+
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.NOW_1,    "now.1min."   );
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.NOW_5,    "now.5min."   );
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.NOW_15,   "now.15min."  );
+
+        addHashtableMetrics( map, snapshot, 0, BenchmarkSnapshot.LIFETIME, "lifetime."   );
 
-        addHashtableMetrics( map, benchmark, benchmark.getTracker1().getLast(),   "now.1min."   );
-        addHashtableMetrics( map, benchmark, benchmark.getTracker5().getLast(),   "now.5min."   );
-        addHashtableMetrics( map, benchmark, benchmark.getTracker15().getLast(),  "now.15min."  );
+        addMeterMetrics( map, snapshot, 0, "now." );
+        addErrorMetrics( map, snapshot, 0, "" );
 
         return map;
         
@@ -86,7 +99,123 @@ public class BenchmarkHandler {
     public Map getBenchmarks() throws Exception {
         return Benchmark.getBenchmarksAsExternalMap();
     }
+
+    /**
+     * Like getBenchmarks() but only for the benchmarks under the given prefix
+     * (for example "org.foo").
+     */
+    public Map getBenchmarks( String prefix ) throws Exception {
+        return toExternalMap( Benchmark.getBenchmarks( prefix ) );
+    }
+
+    /**
+     * Like getBenchmarks() but only for the benchmarks matching the given
+     * pattern.  '*' matches one segment of a name and '**' any number of them.
+     */
+    public Map getBenchmarksMatching( String pattern ) throws Exception {
+        return toExternalMap( Benchmark.getIndex().match( pattern ) );
+    }
+
+    /**
+     * The number of registered benchmarks, the limit, and how many names
+     * overflowed or were evicted.
+     */
+    public Map getRegistryStats() {
+
+        Map map = new Hashtable();
+
+        Iterator it = Benchmark.getRegistryStats().entrySet().iterator();
+
+        while ( it.hasNext() ) {
+
+            Map.Entry entry = (Map.Entry)it.next();
+
+            map.put( entry.getKey(), new Double( ((Long)entry.getValue()).longValue() ) );
+
+        }
+
+        return map;
+
+    }
+
+    /**
+     * The sum of the last 1 minute interval of every benchmark under the given
+     * prefix.
+     */
+    public Map getSubtreeAsHashtable( String prefix ) {
+
+        Map map = new Hashtable();
+
+        addHashtableMetrics( map, null, Benchmark.getIndex().sum( prefix ), "1min." );
+
+        return map;
+
+    }
+
+    Map toExternalMap( Map<String,Benchmark> benchmarks ) {
+        return Benchmark.toExternalMap( BenchmarkSnapshot.capture( benchmarks.values() ) );
+    }
+
+    /**
+     * Add one period of a benchmark from a snapshot.  Uses the same keys as
+     * the BenchmarkMeta version below.
+     */
+    void addHashtableMetrics( Map map,
+                              BenchmarkSnapshot snapshot,
+                              int i,
+                              int p,
+                              String prefix ) {
+
+        map.put( prefix + "duration", new Double( snapshot.getDuration( i, p ) ) );
+        map.put( prefix + "meanDuration", new Double( snapshot.getMeanDuration( i, p ) ) );
+        map.put( prefix + "completed", new Double( snapshot.get( i, p, BenchmarkSnapshot.COMPLETED ) ) );
+        map.put( prefix + "started", new Double( snapshot.get( i, p, BenchmarkSnapshot.STARTED ) ) );
+
+        //percentiles are in millis like duration.
+        map.put( prefix + "p50", new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.P50_NANOS ) ) );
+        map.put( prefix + "p99", new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.P99_NANOS ) ) );
+        map.put( prefix + "p999", new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.P999_NANOS ) ) );
+        map.put( prefix + "maxDuration", new Double( snapshot.getMillis( i, p, BenchmarkSnapshot.MAX_DURATION_NANOS ) ) );
+
+        //failures are kept apart from completions.
+        map.put( prefix + "failed", new Double( snapshot.get( i, p, BenchmarkSnapshot.FAILED ) ) );
+        map.put( prefix + "meanFailedDuration", new Double( snapshot.getMeanFailedDurationNanos( i, p ) / 1000000D ) );
+        map.put( prefix + "errorRate", new Double( snapshot.getErrorRate( i, p ) ) );
+
+        //below 1 the durations are estimated from a sample.
+        map.put( prefix + "sampleRate", new Double( snapshot.getSampleRate( i, p ) ) );
+
+        //Little's law: compare these to the size of the pool being used.
+        map.put( prefix + "inFlight", new Double( snapshot.get( i, p, BenchmarkSnapshot.IN_FLIGHT ) ) );
+        map.put( prefix + "peakInFlight", new Double( snapshot.get( i, p, BenchmarkSnapshot.PEAK_IN_FLIGHT ) ) );
+        map.put( prefix + "concurrency", new Double( snapshot.getConcurrency( i, p ) ) );
+
+        //values passed to record().
+        map.put( prefix + "values", new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_COUNT ) ) );
+        map.put( prefix + "valueSum", new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_SUM ) ) );
+        map.put( prefix + "minValue", new Double( snapshot.get( i, p, BenchmarkSnapshot.MIN_VALUE ) ) );
+        map.put( prefix + "maxValue", new Double( snapshot.get( i, p, BenchmarkSnapshot.MAX_VALUE ) ) );
+        map.put( prefix + "meanValue", new Double( snapshot.getMeanValue( i, p ) ) );
+        map.put( prefix + "valueP50", new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_P50 ) ) );
+        map.put( prefix + "valueP99", new Double( snapshot.get( i, p, BenchmarkSnapshot.VALUE_P99 ) ) );
+
+        //cache benchmarks have additional metadata.
+        if ( snapshot.isCache( i ) ) {
+
+            map.put( prefix + "cache_hits", new Integer( (int)snapshot.get( i, p, BenchmarkSnapshot.CACHE_HITS ) ) );
+            map.put( prefix + "cache_misses", new Integer( (int)snapshot.get( i, p, BenchmarkSnapshot.CACHE_MISSES ) ) );
+            map.put( prefix + "cache_sets", new Integer( (int)snapshot.get( i, p, BenchmarkSnapshot.CACHE_SETS ) ) );
+            map.put( prefix + "cache_evictions", new Integer( (int)snapshot.get( i, p, BenchmarkSnapshot.CACHE_EVICTIONS ) ) );
+            map.put( prefix + "cache_efficiency", new Double( snapshot.getCacheEfficiency( i, p ) ) );
+
+        }
+
+    }
     
+    /**
+     * Add a BenchmarkMeta which doesn't come from a single benchmark (like
+     * the sum of a subtree).
+     */
     void addHashtableMetrics( Map map, 
                               Benchmark benchmark, 
                               BenchmarkMeta meta, 
@@ -97,18 +226,72 @@ public class BenchmarkHandler {
         map.put( prefix + "completed", new Double( meta.getCompleted() ) );
         map.put( prefix + "started", new Double( meta.getStarted() ) );
 
+        //percentiles are in millis like duration.
+        map.put( prefix + "p50", new Double( meta.getP50Nanos() / 1000000D ) );
+        map.put( prefix + "p99", new Double( meta.getP99Nanos() / 1000000D ) );
+        map.put( prefix + "p999", new Double( meta.getP999Nanos() / 1000000D ) );
+        map.put( prefix + "maxDuration", new Double( meta.getMaxDurationNanos() / 1000000D ) );
+
+        //failures are kept apart from completions.
+        map.put( prefix + "failed", new Double( meta.getFailed() ) );
+        map.put( prefix + "meanFailedDuration", new Double( meta.getMeanFailedDurationNanos() / 1000000D ) );
+        map.put( prefix + "errorRate", new Double( meta.getErrorRate() ) );
+
+        //below 1 the durations are estimated from a sample.
+        map.put( prefix + "sampleRate", new Double( meta.getSampleRate() ) );
+
+        //Little's law: compare these to the size of the pool being used.
+        map.put( prefix + "inFlight", new Double( meta.getInFlight() ) );
+        map.put( prefix + "peakInFlight", new Double( meta.getPeakInFlight() ) );
+        map.put( prefix + "concurrency", new Double( meta.getConcurrency() ) );
+
+        //values passed to record().
+        map.put( prefix + "values", new Double( meta.getValueCount() ) );
+        map.put( prefix + "valueSum", new Double( meta.getValueSum() ) );
+        map.put( prefix + "minValue", new Double( meta.getMinValue() ) );
+        map.put( prefix + "maxValue", new Double( meta.getMaxValue() ) );
+        map.put( prefix + "meanValue", new Double( meta.getMeanValue() ) );
+        map.put( prefix + "valueP50", new Double( meta.getValueAtPercentile( 50 ) ) );
+        map.put( prefix + "valueP99", new Double( meta.getValueAtPercentile( 99 ) ) );
+
         //cache benchmarks have additional metadata.
-        if ( benchmark instanceof CacheBenchmark ) {
+        if ( benchmark instanceof CacheBenchmark || benchmark instanceof CacheMeter ) {
 
             map.put( prefix + "cache_hits", new Integer( meta.getCacheHits() ) );
             map.put( prefix + "cache_misses", new Integer( meta.getCacheMisses() ) );
             map.put( prefix + "cache_sets", new Integer( meta.getCacheSets() ) );
+            map.put( prefix + "cache_evictions", new Integer( meta.getCacheEvictions() ) );
             map.put( prefix + "cache_efficiency", new Double( meta.getCacheEfficiency() ) );
 
         }
 
     }
 
+    /**
+     * Add the smoothed (exponentially weighted) completion rates.
+     */
+    void addMeterMetrics( Map map, BenchmarkSnapshot snapshot, int i, String prefix ) {
+
+        map.put( prefix + "1min.rate", new Double( snapshot.getRate( i, BenchmarkSnapshot.RATE_1 ) ) );
+        map.put( prefix + "5min.rate", new Double( snapshot.getRate( i, BenchmarkSnapshot.RATE_5 ) ) );
+        map.put( prefix + "15min.rate", new Double( snapshot.getRate( i, BenchmarkSnapshot.RATE_15 ) ) );
+
+    }
+
+    /**
+     * Add the number of failures by exception class.
+     */
+    void addErrorMetrics( Map map, BenchmarkSnapshot snapshot, int i, String prefix ) {
+
+        String[] errors = snapshot.getErrorNames( i );
+        long[] counts = snapshot.getErrorCounts( i );
+
+        for ( int j = 0; j < errors.length; ++j ) {
+            map.put( prefix + "errors." + errors[j], new Double( counts[j] ) );
+        }
+
+    }
+
     /**
      * @deprecated use getBenchmarkAsHashtable
      */
@@ -0,0 +1,60 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+/**
+ * Base for tests which drive the clock by hand.  Every test runs with a
+ * ManualClock installed and the real clock (and DISABLED) put back
+ * afterwards even if the test fails.
+ *
+ * @author <a href="mailto:burton@tailrank.com">Kevin Burton</a>
+ * @version $Id: Benchmark.java,v 1.3 2005/02/16 02:28:09 burton Exp $
+ */
+public abstract class BenchmarkTestCase extends TestCase {
+
+    protected ManualClock manual = null;
+
+    private BenchmarkClock clock = null;
+
+    public BenchmarkTestCase(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        clock = Benchmark.CLOCK;
+
+        manual = new ManualClock( 1000000 );
+        Benchmark.CLOCK = manual;
+
+    }
+
+    protected void tearDown() throws Exception {
+
+        Benchmark.CLOCK = clock;
+        Benchmark.DISABLED = false;
+
+        super.tearDown();
+
+    }
+
+}
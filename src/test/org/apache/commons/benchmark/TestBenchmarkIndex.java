@@ -0,0 +1,96 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ */
+public class TestBenchmarkIndex extends TestCase {
+
+    public TestBenchmarkIndex(String testName) {
+        super(testName);
+    }
+
+    public void testFind() throws Exception {
+
+        BenchmarkIndex index = new BenchmarkIndex();
+
+        String[] names = new String[] { "org.foo",
+                                        "org.foo.query",
+                                        "org.foo.bar.query",
+                                        "org.foobar.query",
+                                        "org.bar.query",
+                                        "com.foo" };
+
+        for ( int i = 0; i < names.length; ++i ) {
+            index.put( names[i], new Benchmark( names[i] ) );
+        }
+
+        assertEquals( "[org.foo, org.foo.bar.query, org.foo.query]",
+                      index.find( "org.foo" ).keySet().toString() );
+
+        assertEquals( 6, index.find( "" ).size() );
+        assertEquals( 0, index.find( "net" ).size() );
+
+        assertEquals( "[org.bar.query, org.foo.query, org.foobar.query]",
+                      index.match( "org.*.query" ).keySet().toString() );
+
+        assertEquals( "[org.bar.query, org.foo.bar.query, org.foo.query, org.foobar.query]",
+                      index.match( "org.**.query" ).keySet().toString() );
+
+        assertEquals( "[com.foo, org.foo]",
+                      index.match( "*.foo" ).keySet().toString() );
+
+        index.remove( "org.foo" );
+
+        assertNull( index.get( "org.foo" ) );
+        assertNotNull( index.get( "org.foo.query" ) );
+
+        assertEquals( 2, index.find( "org.foo" ).size() );
+
+    }
+
+    public void testSum() throws Exception {
+
+        BenchmarkIndex index = new BenchmarkIndex();
+
+        Benchmark b1 = new Benchmark( "org.foo.a" );
+        Benchmark b2 = new Benchmark( "org.foo.b" );
+        Benchmark b3 = new Benchmark( "org.bar.a" );
+
+        index.put( b1.getName(), b1 );
+        index.put( b2.getName(), b2 );
+        index.put( b3.getName(), b3 );
+
+        b1.increment();
+        b2.increment();
+        b2.increment();
+        b3.increment();
+
+        b1.getTracker1().rollover();
+        b2.getTracker1().rollover();
+        b3.getTracker1().rollover();
+
+        assertEquals( 3, index.sum( "org.foo" ).getCompleted() );
+        assertEquals( 4, index.sum( "org" ).getCompleted() );
+
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ */
+public class TestHistogram extends BenchmarkTestCase {
+
+    public TestHistogram(String testName) {
+        super(testName);
+    }
+
+    public void testHistogram() throws Exception {
+
+        Random r = new Random( 42 );
+
+        for ( int i = 0; i < 100000; ++i ) {
+
+            long value = (long)( Math.pow( 2, r.nextDouble() * 47 ) );
+
+            long reported = Histogram.highestEquivalentValue( Histogram.index( value ) );
+
+            assertTrue( value + " -> " + reported, reported >= value );
+            assertTrue( value + " -> " + reported, reported <= value + value / 16 );
+
+        }
+
+        //rows are allocated lazily in both directions.
+        Histogram histogram = new Histogram();
+        histogram.record( 1000000 );
+        histogram.record( 5 );
+        histogram.record( -1 );
+
+        assertEquals( 3, histogram.getCount() );
+        assertEquals( 0, histogram.getValueAtPercentile( 0 ) );
+        assertEquals( 5, histogram.getValueAtPercentile( 50 ) );
+        assertEquals( Histogram.highestEquivalentValue( Histogram.index( 1000000 ) ),
+                      histogram.getValueAtPercentile( 100 ) );
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestHistogram.testHistogram" );
+
+        for ( int i = 0; i < 998; ++i ) {
+
+            long t = benchmark.begin();
+            manual.advanceNanos( 1000 * 1000 );
+            benchmark.end( t );
+
+        }
+
+        benchmark.start();
+        manual.advanceNanos( 100L * 1000 * 1000 );
+        benchmark.complete();
+
+        benchmark.start();
+        manual.advanceNanos( 1000L * 1000 * 1000 );
+        benchmark.complete();
+
+        BenchmarkMeta meta = benchmark.getTracker1().getNow();
+
+        assertEquals( 1000, meta.getHistogram().getCount() );
+
+        assertEquals( 1.0, meta.getP50Nanos() / 1000000D, 0.0625 );
+        assertEquals( 100.0, meta.getP999Nanos() / 1000000D, 6.25 );
+
+        //percentiles never go past the longest duration.
+        assertEquals( 1000L * 1000 * 1000, meta.getPercentileNanos( 100 ) );
+        assertEquals( meta.getMaxDurationNanos(), meta.getPercentileNanos( 100 ) );
+
+        //make sure the percentiles are exported.
+        benchmark.getTracker1().rollover();
+
+        Map<String,Double> map = Benchmark.readBenchmark( benchmark.getName() );
+
+        assertEquals( 1.0, map.get( "1min.p50" ), 0.125 );
+        assertEquals( 1.0, map.get( "1min.p99" ), 0.125 );
+        assertEquals( 100.0, map.get( "1min.p999" ), 12.5 );
+
+    }
+
+    public void testSampling() throws Exception {
+
+        try {
+
+            Timer timer = new Timer( "org.apache.commons.benchmark.TestHistogram.testSampling" );
+
+            timer.setSampleTarget( 16 );
+
+            int interval = timer.getTracker1().getInterval();
+
+            //everything is timed until we know how busy the benchmark is.
+            for ( int i = 0; i < 1024; ++i ) {
+                timer.update( 2000000 );
+            }
+
+            manual.advance( interval );
+
+            BenchmarkMeta last = timer.getTracker1().getLast();
+
+            assertEquals( 1024, last.getSampled() );
+            assertEquals( 1.0, last.getSampleRate(), 0.001 );
+
+            for ( int i = 0; i < 1024; ++i ) {
+                timer.update( 2000000 );
+            }
+
+            BenchmarkMeta now = timer.getTracker1().getNow();
+
+            //counts stay exact but only 1 in 64 durations is recorded.
+            assertEquals( 1024, now.getCompleted() );
+            assertEquals( 16, now.getSampled() );
+            assertEquals( 16.0 / 1024.0, now.getSampleRate(), 0.0001 );
+
+            //and the estimates are scaled back up.
+            assertEquals( 1024L * 2000000L, now.getDurationNanos() );
+            assertEquals( 2000000, now.getP50Nanos(), 2000000 / 8 );
+
+            //the max is exact even if the outlier isn't sampled.
+            timer.update( 9000000 );
+
+            assertEquals( 9000000, timer.getTracker1().getNow().getMaxDurationNanos() );
+
+            //a fixed rate from the category is rounded to a power of two.
+            BenchmarkCategory.getCategory( "org.apache.commons.benchmark.TestHistogram.testSamplingRate" ).setSampleRate( new Double( 0.3 ) );
+
+            Timer fixed = new Timer( "org.apache.commons.benchmark.TestHistogram.testSamplingRate" );
+
+            //the first bucket is opened before the rate is known.
+            fixed.update( 2000000 );
+
+            manual.advance( interval );
+
+            fixed.getTracker1().getLast();
+
+            for ( int i = 0; i < 1024; ++i ) {
+                fixed.update( 2000000 );
+            }
+
+            now = fixed.getTracker1().getNow();
+
+            assertEquals( 1024, now.getCompleted() );
+            assertEquals( 0.25, now.getSampleRate(), 0.0001 );
+
+        } finally {
+            BenchmarkCategory.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ */
+public class TestMeter extends BenchmarkTestCase {
+
+    public TestMeter(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        BenchmarkCategory.getCategory( "org.apache.commons.benchmark.TestMeter" ).setMetered( Boolean.TRUE );
+
+    }
+
+    protected void tearDown() throws Exception {
+
+        BenchmarkCategory.reset();
+
+        super.tearDown();
+
+    }
+
+    public void testMeter() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestMeter.testMeter" );
+
+        for ( int i = 0; i < 500; ++i ) {
+            benchmark.increment();
+        }
+
+        //the category is metered so everything is counted, not just what
+        //happened after we asked.
+        Meter meter = benchmark.getMeter();
+
+        assertEquals( 500, meter.getCount() );
+        assertEquals( 0.0, meter.getOneMinuteRate(), 0.0 );
+
+        //500 events in one 5 second tick is 100/sec
+        manual.advance( Meter.TICK_INTERVAL );
+
+        assertEquals( 100.0, meter.getOneMinuteRate(), 0.001 );
+        assertEquals( 100.0, meter.getFifteenMinuteRate(), 0.001 );
+
+        //a minute with no events decays like the load average.
+        manual.advance( 60 * 1000 );
+
+        assertEquals( 100.0 * Math.exp( -1 ), meter.getOneMinuteRate(), 0.001 );
+        assertEquals( 100.0 * Math.exp( -1D / 5 ), meter.getFiveMinuteRate(), 0.001 );
+        assertEquals( 100.0 * Math.exp( -1D / 15 ), meter.getFifteenMinuteRate(), 0.001 );
+
+        assertEquals( 500, meter.getCount() );
+
+        meter.close();
+
+    }
+
+    public void testExportedRate() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestMeter.testExportedRate" );
+
+        //nobody has asked for the meter but the category is metered.
+        for ( int i = 0; i < 10; ++i ) {
+            benchmark.start();
+            benchmark.complete();
+        }
+
+        Map<String,Double> map = Benchmark.readBenchmark( benchmark.getName() );
+
+        assertEquals( 0.0, map.get( "1min.rate" ).doubleValue(), 0 );
+
+        //what the rollover thread does every tick.
+        manual.advance( Meter.TICK_INTERVAL );
+        benchmark.meter.rolloverWhenNecessary( manual.currentTimeMillis() );
+
+        map = Benchmark.readBenchmark( benchmark.getName() );
+
+        //10 completions in a 5 second tick.
+        assertEquals( 2.0, map.get( "1min.rate" ).doubleValue(), 0.001 );
+        assertTrue( map.get( "15min.rate" ).doubleValue() > 0 );
+
+    }
+
+    public void testUnmetered() throws Exception {
+
+        BenchmarkCategory.getCategory( "org.apache.commons.benchmark.TestMeter.off" ).setMetered( Boolean.FALSE );
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestMeter.off" );
+
+        benchmark.start();
+        benchmark.complete();
+
+        //nothing to pay for until somebody wants rates.
+        assertNull( benchmark.meter );
+
+        Meter meter = benchmark.getMeter();
+
+        for ( int i = 0; i < 10; ++i ) {
+            benchmark.start();
+            benchmark.complete();
+        }
+
+        assertSame( meter, benchmark.meter );
+
+        //only what happened after we asked.
+        manual.advance( Meter.TICK_INTERVAL );
+
+        assertEquals( 10, meter.getCount() );
+        assertEquals( 2.0, meter.getOneMinuteRate(), 0.001 );
+
+        //and re-categorizing doesn't drop it.
+        BenchmarkCategory.getCategory( "org.apache.commons.benchmark.TestMeter.off.x" ).setMetered( Boolean.FALSE );
+
+        assertSame( meter, benchmark.meter );
+
+        meter.close();
+
+    }
+
+}
@@ -23,7 +23,10 @@ import org.apache.xmlrpc.*;
 
 import junit.framework.*;
 
+import java.lang.ref.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  */
@@ -42,8 +45,8 @@ public class TestPerformance extends TestCase {
         BenchmarkMethodMeta bmeta =
             BenchmarkUtils.benchmarkMethod( "doTest1", 1, getClass() );
 
-        assertEquals( benchmark.tracker1.now.started, TEST1_COUNT );
-        assertEquals( benchmark.tracker1.now.completed, TEST1_COUNT );
+        assertEquals( benchmark.getTracker1().getNow().getStarted(), TEST1_COUNT );
+        assertEquals( benchmark.getTracker1().getNow().getCompleted(), TEST1_COUNT );
 
         double tps = ((double)TEST1_COUNT / (double)bmeta.duration) * 1000D;
 
@@ -62,6 +65,410 @@ public class TestPerformance extends TestCase {
         
     }
 
+    /**
+     * Hammer a single benchmark from multiple threads.  The counters should be
+     * exact no matter how many threads share a stripe.  We go well past the
+     * number of CPUs (and so the number of stripes) so the report shows how
+     * throughput holds up once threads collide and have to move stripes.
+     */
+    public void testConcurrentTransactionsPerSecond() throws Exception {
+
+        Benchmark.DISABLED = false;
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+
+        System.out.println( String.format( "%d cpus, %d stripes", cpus, StripedCounters.STRIPES ) );
+
+        for ( int threads = 1; threads <= Math.max( 16, cpus * 2 ); threads *= 2 ) {
+
+            final Benchmark b = new Benchmark( "TestPerformance.concurrent" + threads );
+
+            long duration = runConcurrently( threads, new Runnable() {
+
+                    public void run() {
+
+                        for ( int i = 0; i < TEST1_COUNT; ++i ) {
+                            b.start();
+                            b.complete();
+                        }
+
+                    }
+
+                } );
+
+            long total = (long)threads * TEST1_COUNT;
+
+            assertEquals( total, b.getTracker1().getNow().getStarted() );
+            assertEquals( total, b.getTracker1().getNow().getCompleted() );
+
+            System.out.println( String.format( "%d threads: %,d ops/sec",
+                                               threads,
+                                               (long)(total / ( duration / 1000D )) ) );
+
+        }
+
+    }
+
+    /**
+     * A CallerBenchmark resolves its caller on the first start().  After that
+     * start() shouldn't acquire any locks so the per call cost should be flat
+     * no matter how many threads are calling it.
+     */
+    public void testCallerBenchmarkStartAfterInit() throws Exception {
+
+        Benchmark.DISABLED = false;
+
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+        final CallerBenchmark b = new CallerBenchmark( this );
+        final long[] first = new long[ threads ];
+        final long[] rest = new long[ threads ];
+        final AtomicInteger index = new AtomicInteger();
+
+        runConcurrently( threads, new Runnable() {
+
+                public void run() {
+
+                    int id = index.getAndIncrement();
+
+                    long before = System.nanoTime();
+                    b.start();
+                    b.complete();
+                    first[id] = System.nanoTime() - before;
+
+                    before = System.nanoTime();
+
+                    for ( int i = 0; i < TEST1_COUNT; ++i ) {
+                        b.start();
+                        b.complete();
+                    }
+
+                    rest[id] = ( System.nanoTime() - before ) / TEST1_COUNT;
+
+                }
+
+            } );
+
+        assertEquals( "org.apache.commons.benchmark.TestPerformance.run", b.getName() );
+
+        long total = (long)threads * ( TEST1_COUNT + 1 );
+
+        assertEquals( total, b.getTracker1().getNow().getStarted() );
+        assertEquals( total, b.getTracker1().getNow().getCompleted() );
+
+        for ( int i = 0; i < threads; ++i ) {
+
+            System.out.println( String.format( "thread %d: first start/complete: %,d ns, after: %,d ns",
+                                               i, first[i], rest[i] ) );
+
+        }
+
+    }
+
+    /**
+     * child() is called inside request loops so looking up an existing child
+     * has to stay cheap (a hash lookup, no locks) no matter how many threads
+     * are doing it.  The field read is printed alongside for scale.
+     */
+    public void testChildLookup() throws Exception {
+
+        Benchmark.DISABLED = false;
+
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+        final CallerBenchmark parent = new CallerBenchmark( this );
+        final CallerBenchmark expected = parent.child( "query" );
+
+        final long[] field = new long[ threads ];
+        final long[] child = new long[ threads ];
+        final AtomicInteger index = new AtomicInteger();
+
+        runConcurrently( threads, new Runnable() {
+
+                public void run() {
+
+                    int id = index.getAndIncrement();
+
+                    //the baseline.  Accumulate the results so the JIT can't
+                    //throw the loops away.
+                    int hash = 0;
+
+                    long before = System.nanoTime();
+
+                    for ( int i = 0; i < TEST1_COUNT * 10; ++i ) {
+                        hash += parent.sink == null ? i : 0;
+                    }
+
+                    field[id] = System.nanoTime() - before;
+
+                    before = System.nanoTime();
+
+                    for ( int i = 0; i < TEST1_COUNT * 10; ++i ) {
+                        hash += parent.child( "query" ) == expected ? i : 0;
+                    }
+
+                    child[id] = System.nanoTime() - before;
+
+                    if ( hash == 42 )
+                        System.out.println( "" );
+
+                }
+
+            } );
+
+        for ( int i = 0; i < threads; ++i ) {
+
+            System.out.println( String.format( "thread %d: field read: %,d ns, child(): %,d ns per %,d calls",
+                                               i, field[i], child[i], TEST1_COUNT * 10 ) );
+
+        }
+
+        assertSame( expected, parent.child( "query" ) );
+        assertSame( expected, Benchmark.getBenchmarks().get( parent.getName() + ".query" ) );
+
+    }
+
+    /**
+     * Push a large number of short lived threads through start()/complete()
+     * (the way a thread-per-request server with a churning pool would) and
+     * make sure nothing is retained per thread once they're gone.
+     *
+     * Every thread checks that its start time stack is empty again and
+     * leaves a weak reference to its closure behind.  Once the threads have
+     * exited (and we've collected) every one of those has to be cleared.
+     *
+     * This would ideally use virtual threads but we're still on a JDK that
+     * doesn't have them so we churn through plain threads in batches.
+     */
+    public void testThreadChurn() throws Exception {
+
+        Benchmark.DISABLED = false;
+
+        final Benchmark b = new Benchmark( "TestPerformance.churn" );
+
+        final List<WeakReference<BenchmarkThreadLocalClosure>> closures =
+            Collections.synchronizedList( new ArrayList() );
+
+        final AtomicInteger unbalanced = new AtomicInteger();
+
+        Runnable task = new Runnable() {
+
+                public void run() {
+
+                    b.start();
+                    b.complete();
+
+                    BenchmarkThreadLocalClosure closure = b.window.getClosure();
+
+                    if ( closure.depth != 0 )
+                        unbalanced.incrementAndGet();
+
+                    closures.add( new WeakReference( closure ) );
+
+                }
+
+            };
+
+        int batch = 64;
+        int batches = 1000;
+
+        long started = System.currentTimeMillis();
+
+        for ( int i = 0; i < batches; ++i ) {
+            runConcurrently( batch, task );
+        }
+
+        long duration = System.currentTimeMillis() - started;
+
+        int total = batch * batches;
+
+        assertEquals( total, b.getTracker1().getNow().getCompleted() );
+        assertEquals( 0, unbalanced.get() );
+        assertEquals( total, closures.size() );
+
+        int retained = retained( closures );
+
+        for ( int i = 0; i < 20 && retained > 0; ++i ) {
+            System.gc();
+            Thread.sleep( 50 );
+            retained = retained( closures );
+        }
+
+        System.out.println( String.format( "%,d threads in %,d ms.  Closures still reachable: %,d",
+                                           total, duration, retained ) );
+
+        assertEquals( 0, retained );
+
+    }
+
+    private static int retained( List<WeakReference<BenchmarkThreadLocalClosure>> refs ) {
+
+        int result = 0;
+
+        synchronized( refs ) {
+
+            for ( WeakReference<BenchmarkThreadLocalClosure> ref : refs ) {
+
+                if ( ref.get() != null )
+                    ++result;
+
+            }
+
+        }
+
+        return result;
+
+    }
+
+    /**
+     * The timing helpers are meant for hot inner loops so they can't
+     * allocate.  begin()/end() and time( Runnable ) never do.  The scope
+     * from time() doesn't make that promise.
+     */
+    public void testTimingAllocation() throws Exception {
+
+        Benchmark.DISABLED = false;
+
+        final Benchmark b = new Benchmark( "TestPerformance.allocation" );
+
+        final Runnable task = new Runnable() {
+
+                public void run() { }
+
+            };
+
+        Runnable tokens = new Runnable() {
+
+                public void run() {
+                    b.end( b.begin() );
+                }
+
+            };
+
+        Runnable runnables = new Runnable() {
+
+                public void run() {
+                    b.time( task );
+                }
+
+            };
+
+        Runnable scopes = new Runnable() {
+
+                public void run() {
+
+                    BenchmarkScope scope = b.time();
+
+                    try {
+                        //nothing
+                    } finally {
+                        scope.close();
+                    }
+
+                }
+
+            };
+
+        assertEquals( 0, allocatedPerCall( tokens ) );
+        assertEquals( 0, allocatedPerCall( runnables ) );
+
+        //whether the scope is eliminated depends on what the JIT decided to
+        //inline (which depends on the order things were compiled in) so this
+        //is only reported for comparison.
+        allocatedPerCall( scopes );
+
+    }
+
+    /**
+     * Bytes allocated by the current thread per call to the given task once
+     * the JIT has settled.  Compilation happens in the background so we
+     * measure a few rounds and take the best one.
+     */
+    static long allocatedPerCall( Runnable task ) {
+
+        java.lang.management.ThreadMXBean mx =
+            java.lang.management.ManagementFactory.getThreadMXBean();
+
+        //not every JVM can tell us.
+        if ( mx instanceof com.sun.management.ThreadMXBean == false )
+            return 0;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)mx;
+
+        long id = Thread.currentThread().getId();
+
+        long result = Long.MAX_VALUE;
+
+        for ( int round = 0; round < 20 && result > 0; ++round ) {
+
+            long before = threads.getThreadAllocatedBytes( id );
+
+            for ( int i = 0; i < TEST1_COUNT; ++i ) {
+                task.run();
+            }
+
+            long allocated = threads.getThreadAllocatedBytes( id ) - before;
+
+            result = Math.min( result, allocated / TEST1_COUNT );
+
+        }
+
+        System.out.println( String.format( "%s: %,d bytes allocated per call",
+                                           task.getClass().getName(),
+                                           result ) );
+
+        return result;
+
+    }
+
+    /**
+     * Run the given task in N threads at the same time and return the wall
+     * clock duration in millis.
+     */
+    static long runConcurrently( int threads, final Runnable task ) throws Exception {
+
+        final CountDownLatch ready = new CountDownLatch( threads );
+        final CountDownLatch go = new CountDownLatch( 1 );
+
+        Thread[] workers = new Thread[ threads ];
+
+        for ( int i = 0; i < threads; ++i ) {
+
+            workers[i] = new Thread() {
+
+                    public void run() {
+
+                        ready.countDown();
+
+                        try {
+                            go.await();
+                        } catch ( InterruptedException e ) {
+                            return;
+                        }
+
+                        task.run();
+
+                    }
+
+                };
+
+            workers[i].start();
+
+        }
+
+        ready.await();
+
+        long before = System.currentTimeMillis();
+        go.countDown();
+
+        for ( int i = 0; i < threads; ++i ) {
+            workers[i].join();
+        }
+
+        return Math.max( 1, System.currentTimeMillis() - before );
+
+    }
+
     public static void doTest1() {
 
         for ( int i = 0; i < TEST1_COUNT; ++i ) {
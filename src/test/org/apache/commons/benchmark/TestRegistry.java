@@ -0,0 +1,228 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import org.apache.commons.benchmark.config.*;
+
+import junit.framework.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ */
+public class TestRegistry extends BenchmarkTestCase {
+
+    public TestRegistry(String testName) {
+        super(testName);
+    }
+
+    public void testRegistry() throws Exception {
+
+        Map<String,Benchmark> benchmarks = Benchmark.benchmarks;
+        BenchmarkIndex index = Benchmark.index;
+        int max = Benchmark.MAX_BENCHMARKS;
+        int idle = Benchmark.IDLE_INTERVALS;
+
+        try {
+
+            Benchmark.benchmarks = new ConcurrentHashMap();
+            Benchmark.index = new BenchmarkIndex();
+            Benchmark.MAX_BENCHMARKS = 2;
+
+            long overflowed = Benchmark.getRegistryStats().get( "overflowed" );
+
+            Benchmark a = Benchmark.getBenchmark( "org.apache.commons.benchmark.TestRegistry.a" );
+            Benchmark b = Benchmark.getBenchmark( "org.apache.commons.benchmark.TestRegistry.a.b" );
+
+            //past the cap everything lands in the overflow benchmark.
+            Benchmark c = Benchmark.getBenchmark( "org.apache.commons.benchmark.TestRegistry.c" );
+
+            assertSame( Benchmark.getOverflow(), c );
+            assertEquals( Benchmark.OVERFLOW_NAME, c.getName() );
+            assertEquals( overflowed + 1, (long)Benchmark.getRegistryStats().get( "overflowed" ) );
+            assertNull( Benchmark.benchmarks.get( "org.apache.commons.benchmark.TestRegistry.c" ) );
+
+            //nothing is evicted until it's been idle long enough.
+            Benchmark.IDLE_INTERVALS = 2;
+
+            int interval = a.getTracker1().getInterval();
+
+            for ( int i = 0; i < 5; ++i ) {
+                b.start();
+                b.complete();
+            }
+
+            assertEquals( 0, Benchmark.evictIdle( manual.currentTimeMillis() ) );
+
+            for ( int i = 0; i < 3; ++i ) {
+
+                manual.advance( interval );
+                a.getTracker1().getNow();
+                b.getTracker1().getNow();
+
+                a.start();
+                a.complete();
+
+            }
+
+            long evicted = Benchmark.getRegistryStats().get( "evicted" );
+
+            assertEquals( 1, Benchmark.evictIdle( manual.currentTimeMillis() ) );
+            assertEquals( evicted + 1, (long)Benchmark.getRegistryStats().get( "evicted" ) );
+
+            assertNull( Benchmark.benchmarks.get( "org.apache.commons.benchmark.TestRegistry.a.b" ) );
+            assertSame( a, Benchmark.benchmarks.get( "org.apache.commons.benchmark.TestRegistry.a" ) );
+
+            //the parent keeps the totals of the evicted child.
+            assertEquals( 8, a.getLifetime().getCompleted() );
+
+            //and the child registers itself again if it's used.
+            b.start();
+            b.complete();
+
+            assertSame( b, Benchmark.benchmarks.get( "org.apache.commons.benchmark.TestRegistry.a.b" ) );
+
+            //on a fresh window so nothing is counted twice.
+            assertEquals( 1, b.getLifetime().getCompleted() );
+            assertEquals( 8, a.getLifetime().getCompleted() );
+
+            //an evicted instance coming back never replaces a newer one.
+            manual.advance( 3 * interval );
+            a.getTracker1().getNow();
+            b.getTracker1().getNow();
+
+            assertEquals( 2, Benchmark.evictIdle( manual.currentTimeMillis() ) );
+
+            Benchmark newer = Benchmark.getBenchmark( "org.apache.commons.benchmark.TestRegistry.a.b" );
+
+            assertNotSame( b, newer );
+
+            b.start();
+            b.complete();
+
+            assertSame( newer, Benchmark.benchmarks.get( "org.apache.commons.benchmark.TestRegistry.a.b" ) );
+            assertSame( newer, Benchmark.index.get( "org.apache.commons.benchmark.TestRegistry.a.b" ) );
+
+            a = Benchmark.getBenchmark( "org.apache.commons.benchmark.TestRegistry.a" );
+
+            //a child past the cap records into its parent.  It's counted as
+            //overflowed every time since we don't keep overflowed names.
+            BenchmarkCategory.getCategory( "org.apache.commons.benchmark.TestRegistry.p" ).setEnabled( Boolean.FALSE );
+
+            CallerBenchmark parent = new CallerBenchmark( "org.apache.commons.benchmark.TestRegistry.p" );
+
+            assertSame( parent, parent.child( "x" ) );
+
+            overflowed = Benchmark.getRegistryStats().get( "overflowed" );
+
+            assertSame( parent, parent.child( "x" ) );
+            assertEquals( overflowed + 1, (long)Benchmark.getRegistryStats().get( "overflowed" ) );
+
+            //it isn't registered but it still honors its category.
+            assertNull( Benchmark.benchmarks.get( parent.getName() ) );
+            assertEquals( parent.getName(), parent.getCategory().getName() );
+
+            parent.increment();
+
+            assertEquals( 0, parent.getTracker1().getNow().getCompleted() );
+
+        } finally {
+
+            BenchmarkCategory.reset();
+
+            Benchmark.benchmarks = benchmarks;
+            Benchmark.index = index;
+            Benchmark.MAX_BENCHMARKS = max;
+            Benchmark.IDLE_INTERVALS = idle;
+
+        }
+
+    }
+
+    public void testCategory() throws Exception {
+
+        File file = File.createTempFile( "benchmark", ".xml" );
+        file.deleteOnExit();
+
+        Writer out = new FileWriter( file );
+
+        out.write( "<benchmark>" +
+                   "<category name='test.category' enabled='false' />" +
+                   "<category name='test.category.b' enabled='true' logOnRollover='true' />" +
+                   "</benchmark>" );
+
+        out.close();
+
+        try {
+
+            Benchmark a = Benchmark.getBenchmark( "test.category.a" );
+            Benchmark b = Benchmark.getBenchmark( "test.category.b.c" );
+
+            //configuring after the benchmarks exist has to apply to them too.
+            XMLConfigurator.configure( file.getPath() );
+
+            assertEquals( "test.category", a.getCategory().getName() );
+            assertEquals( "test.category.b", b.getCategory().getName() );
+
+            assertFalse( a.getCategory().isEnabled() );
+            assertTrue( b.getCategory().isLogOnRollover() );
+            assertTrue( b.getCategory().isBroadcastOnRollover() );
+
+            a.start();
+            a.complete();
+
+            b.start();
+            b.complete();
+
+            assertEquals( 0, a.getTracker1().getNow().getCompleted() );
+            assertEquals( 1, b.getTracker1().getNow().getCompleted() );
+
+            //new benchmarks find their category when they're registered.
+            Benchmark d = Benchmark.getBenchmark( "test.category.d" );
+
+            d.increment();
+
+            assertEquals( 0, d.getTracker1().getNow().getCompleted() );
+
+            BenchmarkCategory.getCategory( "test.category" ).setEnabled( null );
+
+            d.increment();
+
+            assertEquals( 1, d.getTracker1().getNow().getCompleted() );
+
+            //a batch of changes is applied once at the end.
+            BenchmarkCategory.beginUpdate();
+
+            BenchmarkCategory.getCategory( "test.category" ).setEnabled( Boolean.FALSE );
+            BenchmarkCategory.getCategory( "test.category" ).setSampleRate( new Double( 0.5 ) );
+
+            assertFalse( d.disabled );
+
+            BenchmarkCategory.endUpdate();
+
+            assertTrue( d.disabled );
+            assertEquals( 1, d.categorySampleMask );
+
+        } finally {
+            BenchmarkCategory.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ */
+public class TestSnapshot extends BenchmarkTestCase {
+
+    public TestSnapshot(String testName) {
+        super(testName);
+    }
+
+    public void testSnapshot() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestSnapshot.testSnapshot" );
+
+        int interval = benchmark.getTracker1().getInterval();
+
+        for ( int i = 0; i < 10; ++i ) {
+            benchmark.start();
+            manual.advance( 1 );
+            benchmark.complete();
+        }
+
+        benchmark.start();
+        benchmark.fail( new Exception() );
+
+        //still in flight.
+        benchmark.start();
+
+        long seq = benchmark.window.current.seq;
+
+        manual.advance( interval );
+
+        BenchmarkSnapshot snapshot = Benchmark.getSnapshot( benchmark.getName() );
+
+        //reading the snapshot doesn't roll anything over.  The expired
+        //bucket is treated as closed.
+        assertEquals( seq, benchmark.window.current.seq );
+
+        int i = snapshot.indexOf( benchmark.getName() );
+
+        assertEquals( 0, i );
+        assertEquals( -1, snapshot.indexOf( "org.apache.commons.benchmark.TestSnapshot.missing" ) );
+
+        assertEquals( 10, snapshot.get( i, BenchmarkSnapshot.LAST_1, BenchmarkSnapshot.COMPLETED ) );
+        assertEquals( 12, snapshot.get( i, BenchmarkSnapshot.LAST_1, BenchmarkSnapshot.STARTED ) );
+        assertEquals( 1,  snapshot.get( i, BenchmarkSnapshot.LAST_1, BenchmarkSnapshot.FAILED ) );
+        assertEquals( 0,  snapshot.get( i, BenchmarkSnapshot.NOW_1, BenchmarkSnapshot.STARTED ) );
+        assertEquals( 1,  snapshot.get( i, BenchmarkSnapshot.NOW_1, BenchmarkSnapshot.IN_FLIGHT ) );
+        assertEquals( 12, snapshot.get( i, BenchmarkSnapshot.LIFETIME, BenchmarkSnapshot.STARTED ) );
+        assertEquals( 1,  snapshot.getMeanDuration( i, BenchmarkSnapshot.LAST_1 ) );
+
+        assertEquals( "java.lang.Exception", snapshot.getErrorNames( i )[0] );
+
+        //the live trackers agree once they've rolled over.
+        BenchmarkMeta last = benchmark.getTracker1().getLast();
+
+        assertEquals( last.getCompleted(), snapshot.get( i, BenchmarkSnapshot.LAST_1, BenchmarkSnapshot.COMPLETED ) );
+        assertEquals( last.getTimestamp(), snapshot.get( i, BenchmarkSnapshot.LAST_1, BenchmarkSnapshot.TIMESTAMP ) );
+        assertEquals( last.getP99Nanos(), snapshot.get( i, BenchmarkSnapshot.LAST_1, BenchmarkSnapshot.P99_NANOS ) );
+
+        assertEquals( benchmark.toString(), snapshot.toString( i ) );
+
+        //exports come from a snapshot too.
+        Map<String,Double> map = Benchmark.readBenchmark( benchmark.getName() );
+
+        assertEquals( 10.0, map.get( "1min.completed" ).doubleValue(), 0 );
+        assertEquals( 1.0, map.get( "errors.java.lang.Exception" ).doubleValue(), 0 );
+
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import org.apache.commons.benchmark.proxy.*;
+
+import junit.framework.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ */
+public class TestTiming extends BenchmarkTestCase {
+
+    public TestTiming(String testName) {
+        super(testName);
+    }
+
+    public void testBeginEnd() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestTiming.testBeginEnd" );
+
+        //nested timings on the same thread and benchmark shouldn't clobber
+        //each other.
+        long outer = benchmark.begin();
+
+        long inner = benchmark.begin();
+        manual.advance( 50 );
+        benchmark.end( inner );
+
+        manual.advance( 50 );
+        benchmark.end( outer );
+
+        BenchmarkMeta now = benchmark.getTracker1().getNow();
+
+        assertEquals( 2, now.getStarted() );
+        assertEquals( 2, now.getCompleted() );
+
+        //inner is 50ms and outer is 100ms
+        assertEquals( 150, now.getDuration() );
+        assertEquals( 150L * 1000 * 1000, now.getDurationNanos() );
+
+        //a token from a disabled benchmark is ignored.
+        benchmark.end( 0 );
+        assertEquals( 2, benchmark.getTracker1().getNow().getCompleted() );
+
+    }
+
+    /**
+     * start()/complete() pairs on two benchmarks which overlap without nesting
+     * on the same thread.
+     */
+    public void testInterleaved() throws Exception {
+
+        Benchmark a = new Benchmark( "org.apache.commons.benchmark.TestTiming.testInterleaved.a" );
+        Benchmark b = new Benchmark( "org.apache.commons.benchmark.TestTiming.testInterleaved.b" );
+
+        a.start();
+        manual.advanceNanos( 1000 );
+        b.start();
+        manual.advanceNanos( 1000 );
+        a.complete();
+        manual.advanceNanos( 1000 );
+        b.complete();
+
+        assertEquals( 2000, a.getTracker1().getNow().getDurationNanos() );
+        assertEquals( 2000, b.getTracker1().getNow().getDurationNanos() );
+
+        //a complete() skipped while disabled leaves a stale start behind
+        //which mustn't throw off anybody's later durations.
+        a.start();
+        Benchmark.DISABLED = true;
+        a.complete();
+        Benchmark.DISABLED = false;
+
+        manual.advanceNanos( 5000 );
+
+        b.start();
+        a.start();
+        manual.advanceNanos( 1000 );
+        b.complete();
+        a.complete();
+
+        assertEquals( 2000 + 1000, a.getTracker1().getNow().getDurationNanos() );
+        assertEquals( 2000 + 1000, b.getTracker1().getNow().getDurationNanos() );
+
+    }
+
+    public void testInFlight() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestTiming.testInFlight" );
+
+        int interval = benchmark.getTracker1().getInterval();
+
+        long t1 = benchmark.begin();
+        long t2 = benchmark.begin();
+        long t3 = benchmark.begin();
+
+        manual.advance( 10 );
+
+        benchmark.end( t1 );
+        benchmark.end( t2 );
+
+        BenchmarkMeta now = benchmark.getTracker1().getNow();
+
+        assertEquals( 1, now.getInFlight() );
+        assertEquals( 3, now.getPeakInFlight() );
+
+        //two operations of 10ms each over 10ms.
+        assertEquals( 10, now.getElapsed() );
+        assertEquals( 2.0, now.getConcurrency(), 0.001 );
+
+        //the operation still running counts toward the next interval.
+        manual.advance( interval );
+
+        assertEquals( 3, benchmark.getTracker1().getLast().getPeakInFlight() );
+        assertEquals( 1, benchmark.getTracker1().getNow().getPeakInFlight() );
+
+        benchmark.end( t3 );
+
+        assertEquals( 0, benchmark.getTracker1().getNow().getInFlight() );
+        assertEquals( 3, benchmark.getLifetime().getPeakInFlight() );
+
+    }
+
+    public void testFail() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestTiming.testFail" );
+
+        benchmark.start();
+        manual.advance( 10 );
+        benchmark.complete();
+
+        benchmark.start();
+        manual.advance( 2 );
+        benchmark.fail( new IllegalStateException() );
+
+        long token = benchmark.begin();
+        manual.advance( 2 );
+        benchmark.end( token, new IllegalStateException() );
+
+        benchmark.start();
+        benchmark.complete( (Throwable)null );
+
+        BenchmarkMeta now = benchmark.getTracker1().getNow();
+
+        assertEquals( 4, now.getStarted() );
+        assertEquals( 2, now.getCompleted() );
+        assertEquals( 2, now.getFailed() );
+
+        //the fast failures don't drag down the mean duration.
+        assertEquals( 10000000, now.getDurationNanos() );
+        assertEquals( 2000000, now.getMeanFailedDurationNanos() );
+        assertEquals( 50.0, now.getErrorRate(), 0.001 );
+
+        //the failures were in flight too.  14ms of work over 14ms.
+        assertEquals( 1.0, now.getConcurrency(), 0.001 );
+
+        assertEquals( new Long( 2 ),
+                      benchmark.getErrors().get( IllegalStateException.class.getName() ) );
+
+        //the proxy has to complete the benchmark even when the target throws
+        //and callers should see the original exception.
+        IFoo foo = (IFoo)BenchmarkProxyFactory.newBenchmarkFactory( new Foo(), IFoo.class );
+
+        try {
+            foo.doSomethingBad();
+            fail( "Expected exception" );
+        } catch ( UnsupportedOperationException e ) { }
+
+        Benchmark proxied = Benchmark.getBenchmark( IFoo.class.getName() + ".doSomethingBad" );
+
+        assertEquals( 1, proxied.getTracker1().getNow().getFailed() );
+        assertEquals( 0, proxied.getTracker1().getNow().getCompleted() );
+
+        //the same exception when we're disabled.
+        Benchmark.DISABLED = true;
+
+        try {
+            foo.doSomethingBad();
+            fail( "Expected exception" );
+        } catch ( UnsupportedOperationException e ) { }
+
+    }
+
+    /**
+     * A child disabled by its category mustn't leave its parent with a start
+     * that never ends.
+     */
+    public void testDisabledChild() throws Exception {
+
+        try {
+
+            BenchmarkCategory.getCategory( "org.apache.commons.benchmark.TestTiming.testDisabledChild.off" ).setEnabled( Boolean.FALSE );
+
+            CallerBenchmark parent = new CallerBenchmark( "org.apache.commons.benchmark.TestTiming.testDisabledChild" );
+
+            CallerBenchmark off = parent.child( "off" );
+            CallerBenchmark on = parent.child( "on" );
+
+            long token = off.begin();
+
+            assertEquals( 0, token );
+
+            off.end( token );
+
+            token = on.begin();
+            manual.advance( 5 );
+            on.end( token );
+
+            BenchmarkMeta now = parent.getTracker1().getNow();
+
+            assertEquals( 1, now.getStarted() );
+            assertEquals( 1, now.getCompleted() );
+            assertEquals( 0, now.getInFlight() );
+            assertEquals( 5 * 1000 * 1000, now.getDurationNanos() );
+
+        } finally {
+            BenchmarkCategory.reset();
+        }
+
+    }
+
+    public void testTime() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestTiming.testTime" );
+
+        BenchmarkScope scope = benchmark.time();
+
+        try {
+            //nothing
+        } finally {
+            scope.close();
+        }
+
+        scope = benchmark.time();
+        scope.fail( null );
+        scope.close();
+
+        //closing again is a no-op.
+        scope.close();
+
+        benchmark.time( new Runnable() {
+
+                public void run() { }
+
+            } );
+
+        assertEquals( "foo", benchmark.timeChecked( new Callable<String>() {
+
+                public String call() {
+                    return "foo";
+                }
+
+            } ) );
+
+        try {
+
+            benchmark.timeChecked( new Callable<String>() {
+
+                    public String call() throws IOException {
+                        throw new IOException();
+                    }
+
+                } );
+
+            fail( "Expected exception" );
+
+        } catch ( IOException e ) { }
+
+        BenchmarkMeta now = benchmark.getTracker1().getNow();
+
+        assertEquals( 5, now.getStarted() );
+        assertEquals( 3, now.getCompleted() );
+        assertEquals( 2, now.getFailed() );
+        assertEquals( new Long( 1 ), benchmark.getErrors().get( IOException.class.getName() ) );
+
+    }
+
+    public void testDisable() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestTiming.testDisable" );
+
+        benchmark.increment();
+
+        Benchmark.DISABLED = true;
+
+        benchmark.increment();
+
+        //the token from a disabled begin() is ignored even if we're enabled
+        //again by the time end() is called.
+        long t = benchmark.begin();
+        assertEquals( 0, t );
+
+        Benchmark.DISABLED = false;
+        benchmark.end( t );
+
+        assertEquals( 1, benchmark.getTracker1().getNow().getCompleted() );
+
+        //turned back on without a restart.
+        benchmark.increment();
+        assertEquals( 2, benchmark.getTracker1().getNow().getCompleted() );
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ */
+public class TestTimingWheel extends TestCase {
+
+    public TestTimingWheel(String testName) {
+        super(testName);
+    }
+
+    public void testExpire() throws Exception {
+
+        long tick = 10;
+        long start = 1000000;
+
+        //small wheel so that we exercise cascading and the overflow list.
+        TimingWheel<Long> wheel = new TimingWheel( tick, 8, 2, start );
+
+        Random r = new Random( 42 );
+
+        int count = 10000;
+
+        for ( int i = 0; i < count; ++i ) {
+            long deadline = start + r.nextInt( 10000 );
+            wheel.schedule( new Long( deadline ), deadline );
+        }
+
+        assertEquals( count, wheel.size() );
+
+        List<Long> expired = new ArrayList();
+
+        int total = 0;
+
+        for ( long now = start; now <= start + 10000 + tick; now += 7 ) {
+
+            expired.clear();
+            wheel.expire( now, expired );
+
+            for ( Long deadline : expired ) {
+
+                //never early (at tick granularity) and never more than a tick late.
+                assertTrue( deadline / tick <= now / tick );
+                assertTrue( now - deadline < tick + 7 );
+
+            }
+
+            total += expired.size();
+
+        }
+
+        assertEquals( count, total );
+        assertEquals( 0, wheel.size() );
+
+    }
+
+    public void testBackgroundRollover() throws Exception {
+
+        final Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestTimingWheel.idle" );
+
+        BenchmarkWindow window = new BenchmarkWindow( 100, 100, benchmark );
+        final BenchmarkTracker tracker = window.getTracker( 100 );
+
+        final List<BenchmarkMeta> rollovers = Collections.synchronizedList( new ArrayList() );
+
+        BenchmarkListenerRegistry.addEventListener( new BenchmarkListener() {
+
+                public void onRollover( Benchmark b,
+                                        BenchmarkTracker t,
+                                        BenchmarkMeta meta ) {
+
+                    if ( t == tracker )
+                        rollovers.add( meta );
+
+                }
+
+            } );
+
+        window.start();
+        window.complete();
+
+        //nobody touches the benchmark but it should still roll over.
+        Thread.sleep( 350 );
+
+        assertTrue( "seq=" + window.current.seq, window.current.seq >= 2 );
+        assertTrue( rollovers.size() >= 2 );
+        assertEquals( 1, rollovers.get( 0 ).getCompleted() );
+        assertEquals( 0, rollovers.get( 1 ).getCompleted() );
+
+        window.close();
+
+    }
+
+}
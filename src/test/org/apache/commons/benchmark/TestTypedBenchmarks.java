@@ -0,0 +1,135 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ */
+public class TestTypedBenchmarks extends BenchmarkTestCase {
+
+    public TestTypedBenchmarks(String testName) {
+        super(testName);
+    }
+
+    public void testTypedBenchmarks() throws Exception {
+
+        Counter counter = Counter.getCounter( "org.apache.commons.benchmark.TestTypedBenchmarks.counter" );
+
+        assertSame( counter, Counter.getCounter( "org.apache.commons.benchmark.TestTypedBenchmarks.counter" ) );
+
+        counter.inc();
+        counter.add( 4 );
+
+        assertEquals( 5, counter.getTracker1().getNow().getCompleted() );
+        assertEquals( 5, counter.getCount() );
+
+        Timer timer = Timer.getTimer( "org.apache.commons.benchmark.TestTypedBenchmarks.timer" );
+
+        timer.update( 3000 );
+        timer.update( 1000 );
+
+        BenchmarkMeta now = timer.getTracker1().getNow();
+
+        assertEquals( 2, now.getStarted() );
+        assertEquals( 2, now.getCompleted() );
+        assertEquals( 4000, now.getDurationNanos() );
+        assertEquals( 3000, now.getMaxDurationNanos() );
+        assertEquals( 2, now.getHistogram().getCount() );
+
+        CacheMeter cache = CacheMeter.getCacheMeter( "org.apache.commons.benchmark.TestTypedBenchmarks.cache" );
+
+        cache.hit();
+        cache.hit();
+        cache.hit();
+        cache.miss();
+        cache.set();
+        cache.evict();
+
+        now = cache.getTracker1().getNow();
+
+        assertEquals( 3, now.getCacheHits() );
+        assertEquals( 1, now.getCacheMisses() );
+        assertEquals( 1, now.getCacheSets() );
+        assertEquals( 1, now.getCacheEvictions() );
+        assertEquals( 75.0, now.getCacheEfficiency(), 0.0 );
+
+        //buckets only hold the four cache counters and no histogram.
+        BenchmarkInterval bucket = cache.window.current;
+
+        assertEquals( 4, bucket.counters.getWidth() );
+        assertNull( bucket.histogram );
+
+        //and generic calls don't land on top of them.
+        cache.start();
+        cache.complete();
+
+        now = cache.getTracker1().getNow();
+
+        assertEquals( 3, now.getCacheHits() );
+        assertEquals( 0, now.getCompleted() );
+
+        Map<String,Double> map = Benchmark.readBenchmark( "org.apache.commons.benchmark.TestTypedBenchmarks.cache" );
+
+        assertEquals( new Double( 1 ), map.get( "lifetime.evictions" ) );
+
+        //a name can only be used by one type.
+        try {
+            Timer.getTimer( "org.apache.commons.benchmark.TestTypedBenchmarks.counter" );
+            fail( "Expected IllegalArgumentException" );
+        } catch ( IllegalArgumentException e ) { }
+
+    }
+
+    public void testRecord() throws Exception {
+
+        Benchmark benchmark = Benchmark.getBenchmark( "org.apache.commons.benchmark.TestTypedBenchmarks.testRecord" );
+
+        for ( int i = 1; i <= 100; ++i ) {
+            benchmark.record( i );
+        }
+
+        BenchmarkMeta now = benchmark.getTracker1().getNow();
+
+        assertEquals( 100, now.getValueCount() );
+        assertEquals( 5050, now.getValueSum() );
+        assertEquals( 1, now.getMinValue() );
+        assertEquals( 100, now.getMaxValue() );
+        assertEquals( 50.5, now.getMeanValue(), 0.0 );
+
+        //within the 12.5% histogram error.
+        long p50 = now.getValueAtPercentile( 50 );
+        assertTrue( "p50=" + p50, p50 >= 50 && p50 <= 57 );
+
+        //values don't count as completions.
+        assertEquals( 0, now.getCompleted() );
+
+        Map<String,Double> map = Benchmark.readBenchmark( benchmark.getName() );
+
+        assertEquals( new Double( 100 ), map.get( "lifetime.maxValue" ) );
+
+        //counters have nowhere to keep cache stats.
+        try {
+            Counter.getCounter( "org.apache.commons.benchmark.TestTypedBenchmarks.testRecord.counter" ).cache_hit();
+            fail( "Expected UnsupportedOperationException" );
+        } catch ( UnsupportedOperationException e ) { }
+
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.benchmark;
+
+import junit.framework.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ */
+public class TestWindow extends BenchmarkTestCase {
+
+    public TestWindow(String testName) {
+        super(testName);
+    }
+
+    public void testWindow() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestWindow.testWindow" );
+
+        benchmark.increment();
+
+        //start a new bucket.  The 1 minute tracker rolls over but the wider
+        //ones keep accumulating.
+        benchmark.getTracker1().rollover();
+
+        benchmark.increment();
+        benchmark.increment();
+
+        assertEquals( 2, benchmark.getTracker1().getNow().getCompleted() );
+        assertEquals( 1, benchmark.getTracker1().getLast().getCompleted() );
+
+        assertEquals( 3, benchmark.getTracker5().getNow().getCompleted() );
+        assertEquals( 3, benchmark.getTracker15().getNow().getCompleted() );
+
+        //any interval which is a multiple of INTERVAL_1 is just another view.
+        BenchmarkTracker tracker2 = benchmark.getTracker( Benchmark.INTERVAL_1 * 2 );
+
+        assertEquals( 3, tracker2.getNow().getCompleted() );
+        assertSame( tracker2, benchmark.getTracker( Benchmark.INTERVAL_1 * 2 ) );
+
+    }
+
+    /**
+     * Roll over as fast as we can while other threads are recording.  No event
+     * may be lost or double counted and each closed interval must be
+     * internally consistent (every completion has its duration in the
+     * histogram).
+     */
+    public void testRolloverUnderLoad() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestWindow.testRolloverUnderLoad" );
+
+        //wide buckets so the scheduler never rolls over behind our back.
+        final BenchmarkWindow window = new BenchmarkWindow( 3600000, 3600000, benchmark );
+        final BenchmarkTracker tracker = window.getTracker( 3600000 );
+
+        final int threads = 4;
+        final int count = 200000;
+
+        final CountDownLatch done = new CountDownLatch( threads );
+
+        for ( int i = 0; i < threads; ++i ) {
+
+            new Thread() {
+
+                public void run() {
+
+                    for ( int j = 0; j < count; ++j ) {
+                        window.end( window.begin() );
+                    }
+
+                    done.countDown();
+
+                }
+
+            }.start();
+
+        }
+
+        long total = 0;
+        int rollovers = 0;
+
+        while ( done.getCount() > 0 ) {
+
+            tracker.rollover();
+
+            BenchmarkMeta last = tracker.getLast();
+
+            assertEquals( last.getCompleted(), last.getHistogram().getCount() );
+
+            total += last.getCompleted();
+            ++rollovers;
+
+        }
+
+        BenchmarkMeta now = tracker.getNow();
+
+        total += now.getCompleted();
+
+        assertEquals( (long)threads * count, total );
+        assertTrue( rollovers > 1 );
+
+        window.close();
+
+    }
+
+    public void testManualClock() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestWindow.testManualClock" );
+
+        int interval = benchmark.getTracker1().getInterval();
+
+        benchmark.start();
+        manual.advance( 5 );
+        benchmark.complete();
+
+        long t = benchmark.begin();
+        manual.advanceNanos( 250 );
+        benchmark.end( t );
+
+        BenchmarkMeta now = benchmark.getTracker1().getNow();
+
+        assertEquals( 2, now.getCompleted() );
+        assertEquals( 5 * 1000 * 1000 + 250, now.getDurationNanos() );
+        assertEquals( 5, now.getDuration() );
+        assertEquals( 1000000, now.timestamp );
+
+        //nothing rolls over until the clock says so.
+        manual.advance( interval - 6 );
+        assertEquals( 2, benchmark.getTracker1().getNow().getCompleted() );
+
+        manual.advance( 1 );
+        assertEquals( 0, benchmark.getTracker1().getNow().getCompleted() );
+        assertEquals( 2, benchmark.getTracker1().getLast().getCompleted() );
+        assertEquals( 1000000 + interval, benchmark.getTracker1().getNow().timestamp );
+
+    }
+
+    public void testSlidingTracker() throws Exception {
+
+        Benchmark benchmark = new Benchmark( "org.apache.commons.benchmark.TestWindow.testSlidingTracker" );
+
+        int resolution = Benchmark.SLIDING_RESOLUTION;
+
+        BenchmarkTracker tracker = benchmark.getSlidingTracker( 10 * resolution );
+
+        assertTrue( tracker instanceof SlidingBenchmarkTracker );
+
+        //one event per bucket for 20 buckets.  'last' grows until it
+        //covers the full interval and then stays there.
+        for ( int i = 0; i < 20; ++i ) {
+
+            benchmark.increment();
+            manual.advance( resolution );
+
+            assertEquals( Math.min( i + 1, 10 ), tracker.getLast().getCompleted() );
+
+        }
+
+        //the active bucket is empty and the 9 before it have one each.
+        assertEquals( 9, tracker.getNow().getCompleted() );
+        assertEquals( 10, tracker.getLast().getCompleted() );
+
+        //the interval slides forward with the clock and doesn't jump.
+        manual.advance( 5 * resolution );
+
+        assertEquals( 4, tracker.getNow().getCompleted() );
+        assertEquals( 5, tracker.getLast().getCompleted() );
+
+        benchmark.start();
+        manual.advance( 5 );
+        benchmark.complete();
+
+        BenchmarkMeta now = tracker.getNow();
+
+        assertEquals( 5, now.getCompleted() );
+        assertEquals( 5 * 1000 * 1000, now.getDurationNanos() );
+
+    }
+
+    public void testLifetime() throws Exception {
+
+        File file = File.createTempFile( "benchmark", ".checkpoint" );
+
+        try {
+
+            String name = "org.apache.commons.benchmark.TestWindow.testLifetime";
+
+            Benchmark benchmark = Benchmark.getBenchmark( name );
+
+            int interval = benchmark.getTracker1().getInterval();
+
+            benchmark.start();
+            manual.advance( 7 );
+            benchmark.complete();
+
+            //roll over a few times.  The lifetime totals never reset.
+            manual.advance( 3 * interval );
+
+            assertEquals( 0, benchmark.getTracker1().getNow().getCompleted() );
+
+            benchmark.start();
+            manual.advance( 2 );
+            benchmark.complete();
+
+            assertEquals( 1, benchmark.getTracker1().getNow().getCompleted() );
+
+            BenchmarkMeta lifetime = benchmark.getLifetime();
+
+            assertEquals( 2, lifetime.getCompleted() );
+            assertEquals( 9 * 1000 * 1000, lifetime.getDurationNanos() );
+            assertEquals( 7 * 1000 * 1000, lifetime.getMaxDurationNanos() );
+            assertEquals( 1000000, lifetime.getTimestamp() );
+
+            //the totals survive a restart.
+            LifetimeCheckpoint.save( file );
+            LifetimeCheckpoint.load( file );
+
+            Benchmark restarted = new Benchmark( name );
+            restarted.increment();
+
+            lifetime = restarted.getLifetime();
+
+            assertEquals( 3, lifetime.getCompleted() );
+            assertEquals( 7 * 1000 * 1000, lifetime.getMaxDurationNanos() );
+            assertEquals( 1000000, lifetime.getTimestamp() );
+
+        } finally {
+            LifetimeCheckpoint.restored.clear();
+            file.delete();
+        }
+
+    }
+
+}